@@ -0,0 +1,287 @@
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work that the JMH benchmarks time, set up here in the default package,
+ * where the engine's package-private classes can be reached; JMH will not
+ * run benchmarks from the default package, so they call these through
+ * Callable. Each method does its setting up and returns the operation to
+ * time. Programs are read from the data folder of the working directory.
+ */
+public final class BenchmarkFixtures {
+
+	private static final File DATA = new File("data");
+	// calls each interpreted program makes on the robot per operation
+	private static final int ROBOT_CALLS = 10000;
+
+	private BenchmarkFixtures() {
+	}
+
+	public static Callable<Object> parse(String program) {
+		final File f = program(program);
+		if (Parser.parseFile(f) == null)
+			throw new IllegalArgumentException(f + " does not parse");
+		return new Callable<Object>() {
+			@Override
+			public Object call() {
+				return Parser.parseFile(f);
+			}
+		};
+	}
+
+	public static Callable<Object> interpret(String program) {
+		return interpret(parsed(program));
+	}
+
+	/**
+	 * The program compiled by PolicyCompiler, which must be able to.
+	 */
+	public static Callable<Object> policy(String program) {
+		RobotProgramNode prog = parsed(program), compiled = PolicyCompiler.compile(prog);
+		if (compiled == prog)
+			throw new IllegalArgumentException(program + " cannot be compiled to a policy");
+		return interpret(compiled);
+	}
+
+	public static Callable<Object> updatePending(int barrels) {
+		World world = new World(64);
+		Random rand = new Random(barrels);
+		while (world.getAvailableFuel().size() < barrels) {
+			world.getAvailableFuel().add(new Cell(rand.nextInt(64), rand.nextInt(64)));
+		}
+		final Robot robot = world.getRobot(1);
+		return new Callable<Object>() {
+			@Override
+			public Object call() {
+				robot.updatePending();
+				return robot;
+			}
+		};
+	}
+
+	public static Callable<Object> match(String red, String blue) {
+		final MatchRunner runner = new MatchRunner(program(red), program(blue));
+		runner.setSeed(0);
+		runner.setTickTimeout(10);
+		return new Callable<Object>() {
+			int match;
+
+			@Override
+			public Object call() {
+				// the same few seeds over and over, so that every iteration
+				// plays the same matches
+				return runner.play(match++ % 16);
+			}
+		};
+	}
+
+	/**
+	 * Forking a match the given number of ticks in and playing the fork's
+	 * first tick, in which each program reads again every value it read in
+	 * the match so far. Barrels keep appearing under both robots, so
+	 * s2_simple lives for as many ticks as asked.
+	 */
+	public static Callable<Object> fork(int ticks) {
+		int size = World.SIZE;
+		Scenario scenario = new Scenario();
+		scenario.clear(0);
+		scenario.setRobot(1, 0, 0, Robot.DIRECTION.SOUTH);
+		scenario.setRobot(2, size - 1, size - 1, Robot.DIRECTION.NORTH);
+		for (int tick = 10; tick <= ticks; tick += 10) {
+			scenario.addSpawn(tick, 0, 0);
+			scenario.addSpawn(tick, size - 1, size - 1);
+		}
+		World world = new World(size);
+		world.setRobotProgram(1, parsed("s2_simple"), 1);
+		world.setRobotProgram(2, parsed("s2_simple"), 2);
+		world.setScenario(scenario);
+		world.setSnapshots(true);
+		final WorldSnapshot snapshot;
+		world.start();
+		try {
+			while (world.getTicks() < ticks) {
+				if (world.getRobot(1).isDead() || world.getRobot(2).isDead())
+					throw new IllegalStateException("a robot ran out of fuel at tick " + world.getTicks());
+				world.step(TimeUnit.SECONDS.toNanos(1));
+			}
+			snapshot = world.getSnapshot();
+		} finally {
+			world.reset();
+		}
+		return new Callable<Object>() {
+			@Override
+			public Object call() {
+				World fork = snapshot.fork();
+				fork.start();
+				try {
+					fork.step(TimeUnit.SECONDS.toNanos(1));
+				} finally {
+					fork.reset();
+				}
+				return fork;
+			}
+		};
+	}
+
+	private static File program(String name) {
+		File f = new File(DATA, name + ".prog");
+		if (!f.isFile())
+			throw new IllegalArgumentException("No program " + f + "; run from the project root");
+		return f;
+	}
+
+	private static RobotProgramNode parsed(String name) {
+		RobotProgramNode prog = Parser.parseFile(program(name));
+		if (prog == null)
+			throw new IllegalArgumentException(name + " does not parse");
+		return prog;
+	}
+
+	private static Callable<Object> interpret(final RobotProgramNode prog) {
+		final StubRobot robot = new StubRobot();
+		return new Callable<Object>() {
+			@Override
+			public Object call() {
+				robot.reset(ROBOT_CALLS);
+				try {
+					// programs that end early are started again, as long as
+					// they make some progress
+					for (int left = ROBOT_CALLS + 1; robot.getCallsLeft() < left;) {
+						left = robot.getCallsLeft();
+						prog.execute(robot);
+					}
+				} catch (RobotInterruptedException e) {
+					// the robot has made all of its calls
+				}
+				return robot;
+			}
+		};
+	}
+
+	/**
+	 * A robot that stands still and answers its sensors with numbers from a
+	 * fixed sequence, so that a program can be interpreted as fast as the
+	 * interpreter allows. After a set number of calls, the next call stops the
+	 * program.
+	 */
+	static class StubRobot extends Robot {
+		private final Random rand = new Random();
+		private int callsLeft;
+
+		StubRobot() {
+			super(new World(), 0, 0, "stub", true);
+		}
+
+		void reset(int calls) {
+			rand.setSeed(0);
+			callsLeft = calls;
+		}
+
+		int getCallsLeft() {
+			return callsLeft;
+		}
+
+		private void call() {
+			if (--callsLeft < 0)
+				throw new RobotInterruptedException();
+		}
+
+		private int sense() {
+			call();
+			return rand.nextInt(11) - 5;
+		}
+
+		@Override
+		public void move() {
+			call();
+		}
+
+		@Override
+		public void turnLeft() {
+			call();
+		}
+
+		@Override
+		public void turnRight() {
+			call();
+		}
+
+		@Override
+		public void turnAround() {
+			call();
+		}
+
+		@Override
+		public void setShield(boolean shield) {
+			call();
+		}
+
+		@Override
+		public void takeFuel() {
+			call();
+		}
+
+		@Override
+		public void idleWait() {
+			call();
+		}
+
+		@Override
+		public int getDistanceToWall() {
+			return Math.abs(sense());
+		}
+
+		@Override
+		public int getOpponentLR() {
+			return sense();
+		}
+
+		@Override
+		public int getOpponentFB() {
+			return sense();
+		}
+
+		@Override
+		public int numBarrels() {
+			return Math.abs(sense());
+		}
+
+		@Override
+		public int getClosestBarrelLR() {
+			return sense();
+		}
+
+		@Override
+		public int getClosestBarrelFB() {
+			return sense();
+		}
+
+		@Override
+		public int getBarrelLR(int n) {
+			return sense();
+		}
+
+		@Override
+		public int getBarrelFB(int n) {
+			return sense();
+		}
+
+		@Override
+		public int getFuel() {
+			return 50 + sense() * 10;
+		}
+
+		@Override
+		public boolean isShieldOn() {
+			return sense() > 0;
+		}
+
+		@Override
+		void looped(long progress, Object loop) {
+			// never updated, so every loop would look stuck; the calls left
+			// stop the program instead
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package robogame.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the parser, the interpreter, world updates, whole matches
+ * and forks of a match. The work itself is set up by BenchmarkFixtures, in the default
+ * package with the engine, and found by name here.
+ * <p>
+ * Build with mvn package and run from the project root, so that the
+ * programs in data can be found:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar [-prof gc] [regexp]
+ * </pre>
+ *
+ * -prof gc reports the bytes allocated per operation, by every thread,
+ * including the robot threads of a match.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EngineBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Parse {
+		@Param({ "s0_simple", "s0_full", "s1_simple", "s1_full", "s2_simple", "s2_full" })
+		public String program;
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("parse", program);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Interpret {
+		@Param({ "s1_full", "s2_full", "s2_simple" })
+		public String program;
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("interpret", program);
+		}
+	}
+
+	/**
+	 * The programs that PolicyCompiler can compile.
+	 */
+	@State(Scope.Thread)
+	public static class Policy {
+		@Param({ "s2_simple" })
+		public String program;
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("policy", program);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class UpdatePending {
+		@Param({ "0", "1", "10", "100", "1000" })
+		public int barrels;
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("updatePending", barrels);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Match {
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("match", "s1_full", "s2_full");
+		}
+	}
+
+	/**
+	 * A fork replays every value its programs read before the snapshot, so
+	 * its cost grows with the ticks played before it.
+	 */
+	@State(Scope.Thread)
+	public static class ForkAfter {
+		@Param({ "10", "100", "1000", "10000" })
+		public int ticks;
+		Callable<Object> op;
+
+		@Setup
+		public void setUp() throws Exception {
+			op = fixture("fork", ticks);
+		}
+	}
+
+	@Benchmark
+	public void parse(Parse state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	@Benchmark
+	public void interpret(Interpret state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	@Benchmark
+	public void policy(Policy state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	@Benchmark
+	public void updatePending(UpdatePending state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	@Benchmark
+	public void match(Match state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	@Benchmark
+	public void fork(ForkAfter state, Blackhole bh) throws Exception {
+		bh.consume(state.op.call());
+	}
+
+	/**
+	 * @return what the BenchmarkFixtures method of the given name returns for
+	 *         the arguments, which are strings and ints
+	 */
+	@SuppressWarnings("unchecked")
+	private static Callable<Object> fixture(String name, Object... args) throws Exception {
+		Class<?>[] types = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			types[i] = (args[i] instanceof Integer) ? int.class : args[i].getClass();
+		}
+		return (Callable<Object>) Class.forName("BenchmarkFixtures").getMethod(name, types).invoke(null, args);
+	}
+}
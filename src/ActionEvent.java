@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a robot action, lasting from when the robot chose
+ * it until the world applied it and let the robot carry on. A long event is a
+ * robot kept waiting for its opponent or the tick timeout.
+ * <p>
+ * Ticks and actions are frequent, so these events leave out stack traces.
+ */
+@Name("robogame.Action")
+@Label("Robot Action")
+@Category("RoboGame")
+@Description("Time a robot spent blocked waiting for its action to be applied")
+@StackTrace(false)
+class ActionEvent extends jdk.jfr.Event {
+
+	// indexed by Robot.ACTION_ constant, named as in programs
+	static final String[] ACTIONS = { null, "move", "turnL", "turnR", "turnAround", "takeFuel", "wait", "shield" };
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Robot")
+	String robot;
+
+	@Label("Action")
+	String action;
+
+	@Label("Tick")
+	@Description("The tick the action was chosen in")
+	int tick;
+}
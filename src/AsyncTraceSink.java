@@ -0,0 +1,141 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes trace lines on a background thread, so the robot threads only pay
+ * for a queue insertion and never wait on each other for the output stream.
+ * Lines are written in batches and flushed once per batch, and whatever is
+ * still queued is written when the JVM exits.
+ * <p>
+ * The queue holds a fixed number of lines. While it is full a robot waits
+ * for room, so no line is lost, as the automarking output needs. A sink made
+ * to drop lines instead never holds up the robots, and the output says how
+ * many were lost where they would have been; that suits a display, such as
+ * the GUI, that would rather keep up than be complete.
+ */
+public class AsyncTraceSink implements TraceSink {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final ArrayBlockingQueue<String> queue;
+	private final boolean dropWhenFull;
+	private final Writer out;
+	private final Thread writer;
+	private volatile boolean idle;
+	// lines dropped in all, and how many of them the output has mentioned
+	private final AtomicLong dropped = new AtomicLong();
+	private long reported;
+
+	/**
+	 * Makes a sink that loses nothing.
+	 */
+	public AsyncTraceSink(OutputStream stream) {
+		this(stream, DEFAULT_CAPACITY, false);
+	}
+
+	/**
+	 * @param capacity
+	 *            the most lines to hold while the writer catches up
+	 * @param dropWhenFull
+	 *            whether to drop lines written while the queue is full,
+	 *            rather than wait for room
+	 */
+	public AsyncTraceSink(OutputStream stream, int capacity, boolean dropWhenFull) {
+		queue = new ArrayBlockingQueue<String>(capacity);
+		this.dropWhenFull = dropWhenFull;
+		out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					if (!drain()) {
+						idle = true;
+						// recheck so a line queued just before idle was set is
+						// not left waiting for the timeout
+						if (queue.isEmpty())
+							LockSupport.parkNanos(IDLE_PARK_NANOS);
+						idle = false;
+					}
+				}
+			}
+		}, "trace-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}));
+	}
+
+	@Override
+	public void write(Trace.Category category, String message) {
+		if (!queue.offer(message)) {
+			if (dropWhenFull) {
+				dropped.incrementAndGet();
+			} else {
+				LockSupport.unpark(writer);
+				try {
+					queue.put(message);
+				} catch (InterruptedException e) {
+					// the world is being reset; say the line is missing
+					dropped.incrementAndGet();
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (idle)
+			LockSupport.unpark(writer);
+	}
+
+	@Override
+	public void flush() {
+		while (drain()) {
+		}
+	}
+
+	/**
+	 * @return the number of lines dropped because the queue was full, or
+	 *         because a robot was interrupted waiting for room
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes out everything currently queued.
+	 * 
+	 * @return whether there was anything to write
+	 */
+	private synchronized boolean drain() {
+		String line = queue.poll();
+		long lost = dropped.get() - reported;
+		if (line == null && lost == 0)
+			return false;
+		try {
+			for (; line != null; line = queue.poll()) {
+				out.write(line);
+				out.write('\n');
+			}
+			lost = dropped.get() - reported;
+			if (lost > 0) {
+				out.write("... " + lost + " trace lines dropped, the output could not keep up\n");
+				reported += lost;
+			}
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+}
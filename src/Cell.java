@@ -0,0 +1,39 @@
+/**
+ * A square of the arena, or an offset between two squares. Cells cannot be
+ * changed once made, so they are safe to share between threads and to use in
+ * sets of barrels.
+ */
+public final class Cell {
+
+	public final int x, y;
+
+	public Cell(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Cell))
+			return false;
+		Cell c = (Cell) o;
+		return x == c.x && y == c.y;
+	}
+
+	/**
+	 * The same hash as java.awt.Point, which barrels used to be. Barrels the
+	 * same distance from a robot are sensed in the order the set holds them,
+	 * so this keeps robots behaving exactly as they always have.
+	 */
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(x);
+		bits ^= Double.doubleToLongBits(y) * 31;
+		return (((int) bits) ^ ((int) (bits >> 32)));
+	}
+
+	@Override
+	public String toString() {
+		return "(" + x + "," + y + ")";
+	}
+}
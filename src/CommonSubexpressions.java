@@ -0,0 +1,327 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds expressions and conditions that a program works out more than once
+ * between two actions, and makes it work each out only once. Between actions
+ * the sensors cannot change, so a repeated subtree gives the same answer
+ * every time; eq(0, barrelFB) tested by one if and again by the next, say.
+ * <p>
+ * Each subtree repeated without an action in between gets a slot, and every
+ * occurrence of it is replaced by a node that keeps its value in that slot of
+ * the robot's SensorCache. The cache forgets the value when the world next
+ * updates the robot, so a shared value is never used with sensors it was not
+ * worked out from, whichever path the program took to get there. Subtrees
+ * that read variables are left alone, since assignments change them.
+ * <p>
+ * The program is changed in place, so this must be done before it runs.
+ * Nodes this does not know, such as those of a ProgramProfiler, are left as
+ * they are, along with everything inside them.
+ */
+public class CommonSubexpressions {
+
+	// the subtrees worth a slot, and their slots
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+	/**
+	 * @return the number of slots used, 0 if nothing was repeated
+	 */
+	public static int eliminate(RobotProgramNode prog) {
+		CommonSubexpressions cse = new CommonSubexpressions();
+		cse.findStatement(prog, new HashSet<String>());
+		if (!cse.slots.isEmpty())
+			cse.replaceStatement(prog);
+		return cse.slots.size();
+	}
+
+	// Finding repeats. Each method is given the subtrees already worked out
+	// since the last action, adds the ones it works out, and returns whether
+	// it may have acted.
+
+	private boolean findStatement(RobotProgramNode node, Set<String> seen) {
+		if (node instanceof programNode || node instanceof blockNode) {
+			List<RobotProgramNode> commands = (node instanceof programNode) ? ((programNode) node).children
+					: ((blockNode) node).commands;
+			boolean acted = false;
+			for (RobotProgramNode n : commands) {
+				if (findStatement(n, seen)) {
+					acted = true;
+					seen.clear();
+				}
+			}
+			return acted;
+		} else if (node instanceof ifNode) {
+			ifNode n = (ifNode) node;
+			boolean acted = false;
+			for (int i = 0; i < n.conditions.size(); i++) {
+				findCondition(n.conditions.get(i), seen);
+				// a block starts with what its conditions worked out
+				acted |= findStatement(n.blocks.get(i), new HashSet<String>(seen));
+			}
+			acted |= findStatement(n.elseNode, new HashSet<String>(seen));
+			return acted;
+		} else if (node instanceof whileNode) {
+			whileNode n = (whileNode) node;
+			findCondition(n.condition, seen);
+			findStatement(n.block, new HashSet<String>(seen));
+			// the condition is worked out again after the block
+			return true;
+		} else if (node instanceof loopNode) {
+			return true;
+		} else if (node instanceof moveNode) {
+			if (((moveNode) node).exp != null)
+				findExpression(((moveNode) node).exp, seen);
+			return true;
+		} else if (node instanceof waitNode) {
+			if (((waitNode) node).exp != null)
+				findExpression(((waitNode) node).exp, seen);
+			return true;
+		} else if (node instanceof assgnNode) {
+			findExpression(((assgnNode) node).getExpression(), seen);
+			return false;
+		}
+		// nullNode and the shield, which leave the sensors alone, and
+		// actions; unknown nodes may do anything
+		return !(node instanceof nullNode || node instanceof shieldOnNode || node instanceof shieldOffNode);
+	}
+
+	private void findCondition(conditionNode node, Set<String> seen) {
+		if (node instanceof condLTNode) {
+			findExpression(((condLTNode) node).lhs, seen);
+			findExpression(((condLTNode) node).rhs, seen);
+		} else if (node instanceof condGTNode) {
+			findExpression(((condGTNode) node).lhs, seen);
+			findExpression(((condGTNode) node).rhs, seen);
+		} else if (node instanceof condEQNode) {
+			findExpression(((condEQNode) node).lhs, seen);
+			findExpression(((condEQNode) node).rhs, seen);
+		} else if (node instanceof condAndNode) {
+			findCondition(((condAndNode) node).lhs, seen);
+			// and and or may stop before their right hand side
+			findCondition(((condAndNode) node).rhs, new HashSet<String>(seen));
+		} else if (node instanceof condOrNode) {
+			findCondition(((condOrNode) node).lhs, seen);
+			findCondition(((condOrNode) node).rhs, new HashSet<String>(seen));
+		} else if (node instanceof condNotNode) {
+			findCondition(((condNotNode) node).cond, seen);
+		}
+		found(key(node), seen);
+	}
+
+	private void findExpression(expressionNode node, Set<String> seen) {
+		if (node instanceof opAddNode) {
+			findExpression(((opAddNode) node).lhs, seen);
+			findExpression(((opAddNode) node).rhs, seen);
+		} else if (node instanceof opSubNode) {
+			findExpression(((opSubNode) node).lhs, seen);
+			findExpression(((opSubNode) node).rhs, seen);
+		} else if (node instanceof opMulNode) {
+			findExpression(((opMulNode) node).lhs, seen);
+			findExpression(((opMulNode) node).rhs, seen);
+		} else if (node instanceof opDivNode) {
+			findExpression(((opDivNode) node).lhs, seen);
+			findExpression(((opDivNode) node).rhs, seen);
+		}
+		found(key(node), seen);
+	}
+
+	private void found(String key, Set<String> seen) {
+		if (key != null && !seen.add(key) && !slots.containsKey(key))
+			slots.put(key, slots.size());
+	}
+
+	/**
+	 * @return a description of the subtree that is the same for subtrees that
+	 *         always give the same answer, or null if it is not worth sharing:
+	 *         it is a sensor, reads a variable, reads no sensor, or is not
+	 *         known
+	 */
+	private static String key(Object node) {
+		// a sensor on its own is already kept by the SensorCache
+		if (node instanceof sensorNode)
+			return null;
+		String key = structure(node);
+		return (key != null && key.indexOf('$') >= 0) ? key : null;
+	}
+
+	// sensors are marked with a $
+	private static String structure(Object node) {
+		String name = node.getClass().getSimpleName();
+		if (node instanceof numNode)
+			return Integer.toString(((numNode) node).evaluate(null));
+		if (node instanceof sensBarrelLRNode)
+			return join("$" + name, ((sensBarrelLRNode) node).exp, null);
+		if (node instanceof sensBarrelFBNode)
+			return join("$" + name, ((sensBarrelFBNode) node).exp, null);
+		if (node instanceof sensFuelLeftNode || node instanceof sensOppLRNode || node instanceof sensOppFBNode
+				|| node instanceof sensNumBarrelsNode || node instanceof sensWallDistNode)
+			return "$" + name;
+		if (node instanceof opAddNode)
+			return commute(name, ((opAddNode) node).lhs, ((opAddNode) node).rhs);
+		if (node instanceof opSubNode)
+			return join(name, ((opSubNode) node).lhs, ((opSubNode) node).rhs);
+		if (node instanceof opMulNode)
+			return commute(name, ((opMulNode) node).lhs, ((opMulNode) node).rhs);
+		if (node instanceof opDivNode)
+			return join(name, ((opDivNode) node).lhs, ((opDivNode) node).rhs);
+		if (node instanceof condLTNode)
+			return join(name, ((condLTNode) node).lhs, ((condLTNode) node).rhs);
+		if (node instanceof condGTNode)
+			return join(name, ((condGTNode) node).lhs, ((condGTNode) node).rhs);
+		if (node instanceof condEQNode)
+			return commute(name, ((condEQNode) node).lhs, ((condEQNode) node).rhs);
+		if (node instanceof condAndNode)
+			return commute(name, ((condAndNode) node).lhs, ((condAndNode) node).rhs);
+		if (node instanceof condOrNode)
+			return commute(name, ((condOrNode) node).lhs, ((condOrNode) node).rhs);
+		if (node instanceof condNotNode)
+			return join(name, ((condNotNode) node).cond, null);
+		// variables, and nodes that may do anything
+		return null;
+	}
+
+	/**
+	 * For operations whose operands can be swapped, so that eq(barrelFB, 0)
+	 * and eq(0, barrelFB) are found to be the same.
+	 */
+	private static String commute(String name, Object lhs, Object rhs) {
+		String l = structure(lhs), r = structure(rhs);
+		if (l == null || r == null)
+			return null;
+		return (l.compareTo(r) <= 0) ? name + "(" + l + "," + r + ")" : name + "(" + r + "," + l + ")";
+	}
+
+	private static String join(String name, Object lhs, Object rhs) {
+		String l = structure(lhs), r = (rhs == null) ? "" : structure(rhs);
+		return (l == null || r == null) ? null : name + "(" + l + "," + r + ")";
+	}
+
+	// Replacing repeats with shared nodes
+
+	private void replaceStatement(RobotProgramNode node) {
+		if (node instanceof programNode || node instanceof blockNode) {
+			for (RobotProgramNode n : (node instanceof programNode) ? ((programNode) node).children
+					: ((blockNode) node).commands) {
+				replaceStatement(n);
+			}
+		} else if (node instanceof ifNode) {
+			ifNode n = (ifNode) node;
+			for (int i = 0; i < n.conditions.size(); i++) {
+				n.conditions.set(i, replaceCondition(n.conditions.get(i)));
+				replaceStatement(n.blocks.get(i));
+			}
+			replaceStatement(n.elseNode);
+		} else if (node instanceof whileNode) {
+			((whileNode) node).condition = replaceCondition(((whileNode) node).condition);
+			replaceStatement(((whileNode) node).block);
+		} else if (node instanceof moveNode) {
+			if (((moveNode) node).exp != null)
+				((moveNode) node).exp = replaceExpression(((moveNode) node).exp);
+		} else if (node instanceof waitNode) {
+			if (((waitNode) node).exp != null)
+				((waitNode) node).exp = replaceExpression(((waitNode) node).exp);
+		} else if (node instanceof assgnNode) {
+			((assgnNode) node).setExpression(replaceExpression(((assgnNode) node).getExpression()));
+		}
+	}
+
+	private conditionNode replaceCondition(conditionNode node) {
+		Integer slot = slots.get(key(node));
+		if (slot != null)
+			return new sharedCondition(slot, node);
+		if (node instanceof condLTNode) {
+			((condLTNode) node).lhs = replaceExpression(((condLTNode) node).lhs);
+			((condLTNode) node).rhs = replaceExpression(((condLTNode) node).rhs);
+		} else if (node instanceof condGTNode) {
+			((condGTNode) node).lhs = replaceExpression(((condGTNode) node).lhs);
+			((condGTNode) node).rhs = replaceExpression(((condGTNode) node).rhs);
+		} else if (node instanceof condEQNode) {
+			((condEQNode) node).lhs = replaceExpression(((condEQNode) node).lhs);
+			((condEQNode) node).rhs = replaceExpression(((condEQNode) node).rhs);
+		} else if (node instanceof condAndNode) {
+			((condAndNode) node).lhs = replaceCondition(((condAndNode) node).lhs);
+			((condAndNode) node).rhs = replaceCondition(((condAndNode) node).rhs);
+		} else if (node instanceof condOrNode) {
+			((condOrNode) node).lhs = replaceCondition(((condOrNode) node).lhs);
+			((condOrNode) node).rhs = replaceCondition(((condOrNode) node).rhs);
+		} else if (node instanceof condNotNode) {
+			((condNotNode) node).cond = replaceCondition(((condNotNode) node).cond);
+		}
+		return node;
+	}
+
+	private expressionNode replaceExpression(expressionNode node) {
+		Integer slot = slots.get(key(node));
+		if (slot != null)
+			return new sharedExpression(slot, node);
+		if (node instanceof opAddNode) {
+			((opAddNode) node).lhs = replaceExpression(((opAddNode) node).lhs);
+			((opAddNode) node).rhs = replaceExpression(((opAddNode) node).rhs);
+		} else if (node instanceof opSubNode) {
+			((opSubNode) node).lhs = replaceExpression(((opSubNode) node).lhs);
+			((opSubNode) node).rhs = replaceExpression(((opSubNode) node).rhs);
+		} else if (node instanceof opMulNode) {
+			((opMulNode) node).lhs = replaceExpression(((opMulNode) node).lhs);
+			((opMulNode) node).rhs = replaceExpression(((opMulNode) node).rhs);
+		} else if (node instanceof opDivNode) {
+			((opDivNode) node).lhs = replaceExpression(((opDivNode) node).lhs);
+			((opDivNode) node).rhs = replaceExpression(((opDivNode) node).rhs);
+		}
+		return node;
+	}
+
+	/**
+	 * An expression worked out at most once between world updates.
+	 */
+	static class sharedExpression implements expressionNode {
+		private final int slot;
+		private final expressionNode exp;
+
+		sharedExpression(int slot, expressionNode exp) {
+			this.slot = slot;
+			this.exp = exp;
+		}
+
+		@Override
+		public int evaluate(Robot robot) {
+			SensorCache cache = robot.getSensorCache();
+			int val = cache.getSlot(slot);
+			return (val != SensorCache.MISSING) ? val : cache.putSlot(slot, exp.evaluate(robot));
+		}
+
+		@Override
+		public String toString() {
+			return exp.toString();
+		}
+	}
+
+	/**
+	 * A condition worked out at most once between world updates.
+	 */
+	static class sharedCondition implements conditionNode {
+		private final int slot;
+		private final conditionNode cond;
+
+		sharedCondition(int slot, conditionNode cond) {
+			this.slot = slot;
+			this.cond = cond;
+		}
+
+		@Override
+		public boolean evaluate(Robot robot) {
+			SensorCache cache = robot.getSensorCache();
+			int val = cache.getSlot(slot);
+			if (val == SensorCache.MISSING)
+				val = cache.putSlot(slot, cond.evaluate(robot) ? 1 : 0);
+			return val != 0;
+		}
+
+		@Override
+		public String toString() {
+			return cond.toString();
+		}
+	}
+}
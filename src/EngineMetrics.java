@@ -0,0 +1,298 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live counters for the engine, readable over JMX as robogame:type=Engine
+ * once register has been called. The engine counts as it goes whether or not
+ * anyone is looking: each count is a LongAdder, so robot and world threads
+ * never wait on each other or on a reader.
+ */
+public class EngineMetrics implements EngineMetricsMXBean {
+
+	public static final String NAME = "robogame:type=Engine";
+
+	private static final EngineMetrics INSTANCE = new EngineMetrics();
+	// waits of up to 2^20 microseconds, about a second, and a bucket for longer
+	private static final int BUCKETS = 22;
+
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	private final LongAdder matchesStarted = new LongAdder(), matchesCompleted = new LongAdder();
+	private final Rate ticks = new Rate();
+	private final LongAdder tickBytes = new LongAdder(), measuredTicks = new LongAdder();
+	// indexed by Robot.ACTION_ constant
+	private final Rate[] actions = new Rate[ActionEvent.ACTIONS.length];
+	private final LongAdder blocks = new LongAdder(), blockedNanos = new LongAdder();
+	private final LongAdder[] blockedHistogram = new LongAdder[BUCKETS];
+	private final LongAdder parses = new LongAdder(), parseFailures = new LongAdder(), parseNanos = new LongAdder();
+	private final LongAdder sensorHits = new LongAdder(), sensorMisses = new LongAdder();
+	private final LongAdder spins = new LongAdder(), budgetStops = new LongAdder();
+	private final LongAdder leakedRobots = new LongAdder();
+
+	private EngineMetrics() {
+		for (int i = 1; i < actions.length; i++) {
+			actions[i] = new Rate();
+		}
+		for (int i = 0; i < BUCKETS; i++) {
+			blockedHistogram[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * A count, and how fast it was going when last read.
+	 */
+	private static class Rate {
+		final LongAdder count = new LongAdder();
+		private long lastCount, lastNanos = System.nanoTime();
+		private double perSecond;
+
+		synchronized double perSecond() {
+			long now = System.nanoTime(), n = count.sum();
+			if (now - lastNanos >= 1000000000L) {
+				perSecond = (n - lastCount) * 1e9 / (now - lastNanos);
+				lastCount = n;
+				lastNanos = now;
+			}
+			return perSecond;
+		}
+
+		synchronized void reset() {
+			count.reset();
+			lastCount = 0;
+			lastNanos = System.nanoTime();
+			perSecond = 0;
+		}
+	}
+
+	public static EngineMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Makes the metrics visible in the platform MBean server, for jconsole and
+	 * other JMX clients. Registering more than once does nothing.
+	 */
+	public static synchronized void register() {
+		try {
+			ObjectName name = new ObjectName(NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threads() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+				return threads;
+		}
+		return null;
+	}
+
+	// Called by the engine as things happen
+
+	static void matchStarted() {
+		INSTANCE.matchesStarted.increment();
+	}
+
+	static void matchEnded() {
+		INSTANCE.matchesCompleted.increment();
+	}
+
+	/**
+	 * @return the bytes the current thread has allocated so far, or -1 if that
+	 *         cannot be measured, to be passed to tickEnded
+	 */
+	static long tickStarted() {
+		return (THREADS != null) ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	static void tickEnded(long allocatedAtStart) {
+		INSTANCE.ticks.count.increment();
+		if (allocatedAtStart >= 0) {
+			INSTANCE.tickBytes.add(THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedAtStart);
+			INSTANCE.measuredTicks.increment();
+		}
+	}
+
+	static void action(int action, long blockedNanos) {
+		INSTANCE.actions[action].count.increment();
+		if (blockedNanos >= 0) {
+			INSTANCE.blocks.increment();
+			INSTANCE.blockedNanos.add(blockedNanos);
+			long micros = blockedNanos / 1000;
+			int bucket = (micros == 0) ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+			INSTANCE.blockedHistogram[Math.min(bucket, BUCKETS - 1)].increment();
+		}
+	}
+
+	static void parsed(boolean ok, long nanos) {
+		INSTANCE.parses.increment();
+		if (!ok)
+			INSTANCE.parseFailures.increment();
+		INSTANCE.parseNanos.add(nanos);
+	}
+
+	static void sensorReads(long hits, long misses) {
+		INSTANCE.sensorHits.add(hits);
+		INSTANCE.sensorMisses.add(misses);
+	}
+
+	static void spin() {
+		INSTANCE.spins.increment();
+	}
+
+	static void overBudget() {
+		INSTANCE.budgetStops.increment();
+	}
+
+	static void robotsLeaked(long robots) {
+		INSTANCE.leakedRobots.add(robots);
+	}
+
+	// EngineMetricsMXBean
+
+	@Override
+	public long getMatchesRunning() {
+		// read completed first, so that a match ending meanwhile is not
+		// counted as running twice
+		long completed = matchesCompleted.sum();
+		return Math.max(0, matchesStarted.sum() - completed);
+	}
+
+	@Override
+	public long getMatchesCompleted() {
+		return matchesCompleted.sum();
+	}
+
+	@Override
+	public long getTicks() {
+		return ticks.count.sum();
+	}
+
+	@Override
+	public double getTicksPerSecond() {
+		return ticks.perSecond();
+	}
+
+	@Override
+	public double getAllocatedBytesPerTick() {
+		return average(tickBytes.sum(), measuredTicks.sum());
+	}
+
+	@Override
+	public Map<String, Long> getActions() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (int i = 1; i < actions.length; i++) {
+			map.put(ActionEvent.ACTIONS[i], actions[i].count.sum());
+		}
+		return map;
+	}
+
+	@Override
+	public Map<String, Double> getActionsPerSecond() {
+		Map<String, Double> map = new LinkedHashMap<String, Double>();
+		for (int i = 1; i < actions.length; i++) {
+			map.put(ActionEvent.ACTIONS[i], actions[i].perSecond());
+		}
+		return map;
+	}
+
+	@Override
+	public double getAverageBlockedMicros() {
+		return average(blockedNanos.sum(), blocks.sum()) / 1000;
+	}
+
+	@Override
+	public long[] getBlockedMicrosHistogram() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = blockedHistogram[i].sum();
+		}
+		return counts;
+	}
+
+	@Override
+	public long getParses() {
+		return parses.sum();
+	}
+
+	@Override
+	public long getParseFailures() {
+		return parseFailures.sum();
+	}
+
+	@Override
+	public double getAverageParseMillis() {
+		return average(parseNanos.sum(), parses.sum()) / 1e6;
+	}
+
+	@Override
+	public long getSensorHits() {
+		return sensorHits.sum();
+	}
+
+	@Override
+	public long getSensorMisses() {
+		return sensorMisses.sum();
+	}
+
+	@Override
+	public double getSensorHitRate() {
+		long hits = sensorHits.sum();
+		return average(hits, hits + sensorMisses.sum());
+	}
+
+	@Override
+	public long getSpins() {
+		return spins.sum();
+	}
+
+	@Override
+	public long getBudgetStops() {
+		return budgetStops.sum();
+	}
+
+	@Override
+	public long getLeakedRobots() {
+		return leakedRobots.sum();
+	}
+
+	@Override
+	public void reset() {
+		// matches still running will be counted as completed when they end
+		matchesStarted.add(-getMatchesCompleted());
+		matchesCompleted.reset();
+		ticks.reset();
+		tickBytes.reset();
+		measuredTicks.reset();
+		for (int i = 1; i < actions.length; i++) {
+			actions[i].reset();
+		}
+		blocks.reset();
+		blockedNanos.reset();
+		for (LongAdder bucket : blockedHistogram) {
+			bucket.reset();
+		}
+		parses.reset();
+		parseFailures.reset();
+		parseNanos.reset();
+		sensorHits.reset();
+		sensorMisses.reset();
+		spins.reset();
+		budgetStops.reset();
+		leakedRobots.reset();
+	}
+
+	private static double average(long total, long count) {
+		return (count == 0) ? 0 : (double) total / count;
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Map;
+
+/**
+ * What EngineMetrics shows over JMX. Rates are per second, measured over the
+ * time since they were last read, or at least the last second.
+ */
+public interface EngineMetricsMXBean {
+
+	long getMatchesRunning();
+
+	long getMatchesCompleted();
+
+	long getTicks();
+
+	double getTicksPerSecond();
+
+	/**
+	 * @return bytes allocated by the thread updating the world, per tick
+	 */
+	double getAllocatedBytesPerTick();
+
+	/**
+	 * @return actions taken so far, by name as written in programs
+	 */
+	Map<String, Long> getActions();
+
+	Map<String, Double> getActionsPerSecond();
+
+	/**
+	 * @return how long, on average, a robot waits between choosing an action
+	 *         and the world applying it
+	 */
+	double getAverageBlockedMicros();
+
+	/**
+	 * @return the number of waits that took under 1, 2, 4, ... microseconds,
+	 *         the last bucket counting all the longer ones
+	 */
+	long[] getBlockedMicrosHistogram();
+
+	long getParses();
+
+	long getParseFailures();
+
+	double getAverageParseMillis();
+
+	/**
+	 * @return sensor readings answered from a robot's SensorCache, because
+	 *         the program had already read them since the last update
+	 */
+	long getSensorHits();
+
+	long getSensorMisses();
+
+	double getSensorHitRate();
+
+	/**
+	 * @return times a robot was caught going round a loop without acting
+	 */
+	long getSpins();
+
+	/**
+	 * @return robots stopped for going over their RobotBudget
+	 */
+	long getBudgetStops();
+
+	/**
+	 * @return robots still running when their world was reset, after it
+	 *         had waited for them to stop
+	 */
+	long getLeakedRobots();
+
+	/**
+	 * Starts counting everything from zero again.
+	 */
+	void reset();
+}
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a whole match, from World.start until a robot
+ * runs out of fuel or the world is reset.
+ */
+@Name("robogame.Match")
+@Label("Match")
+@Category("RoboGame")
+@Description("A match, from start to end")
+@StackTrace(false)
+class MatchEvent extends jdk.jfr.Event {
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Ticks")
+	int ticks;
+
+	@Label("Result")
+	@Description("red, blue or draw when a robot ran out of fuel, or stopped")
+	String result;
+
+	@Label("Red Fuel")
+	int fuel1;
+
+	@Label("Blue Fuel")
+	int fuel2;
+}
@@ -0,0 +1,285 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Streams a match to disk as it is played, to be read back by
+ * MatchRecording.
+ * <p>
+ * The file starts with a header holding the arena size, the world seed and
+ * hashes of both programs. Then come blocks of keyframeInterval ticks, each
+ * compressed on its own. The first tick of a block is a keyframe holding the
+ * full state; every other tick holds only what changed since the tick
+ * before, as varints. The file ends with an index of where each block starts,
+ * so a reader can jump to any tick by decoding a single block.
+ *
+ * <pre>
+ * header: MAGIC VERSION size seed hash1 hash2 keyframeInterval
+ * block:  compressedLength rawLength deflated(firstTick tick*)
+ * tick:   flags [robot1] [robot2] [barrels]
+ * robot:  fieldMask zigzag(delta)* for each changed field
+ * barrels: added (x y)* removed (x y)*
+ * index:  count (firstTick offset)*
+ * footer: indexOffset tickCount INDEX_MAGIC
+ * </pre>
+ */
+public class MatchRecorder implements Closeable {
+
+	static final int MAGIC = 0x52425243; // RBRC
+	static final int INDEX_MAGIC = 0x52424958; // RBIX
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8 + 4;
+	static final int FOOTER_SIZE = 8 + 4 + 4;
+
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+	// flags of a tick
+	static final int KEYFRAME = 1, ROBOT1 = 2, ROBOT2 = 4, BARRELS = 8;
+	// fields of a robot
+	static final int F_X = 1, F_Y = 2, F_DIR = 4, F_FUEL = 8, F_SHIELD = 16, F_ACTION = 32;
+
+	private final FileChannel channel;
+	private final ByteBuffer out = ByteBuffer.allocate(1 << 16);
+	private final int keyframeInterval;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	private byte[] raw = new byte[1 << 12];
+	private int rawLength;
+	private byte[] compressed = new byte[1 << 12];
+	private int blockTicks;
+
+	private int[] indexTicks = new int[16];
+	private long[] indexOffsets = new long[16];
+	private int indexSize;
+	private int tickCount;
+
+	private final RobotState[] last = { new RobotState(), new RobotState() };
+	private final RobotState current = new RobotState();
+	private Set<Cell> lastBarrels = new HashSet<Cell>();
+	private Set<Cell> currentBarrels = new HashSet<Cell>();
+	private boolean failed;
+
+	public MatchRecorder(Path file, World world) throws IOException {
+		this(file, world, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates the file and writes its header. The world's seed and programs
+	 * must already be set.
+	 */
+	public MatchRecorder(Path file, World world, int keyframeInterval) throws IOException {
+		this.keyframeInterval = keyframeInterval;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(world.getSize());
+		out.putLong(world.getSeed());
+		out.putLong(world.getProgramHash(1));
+		out.putLong(world.getProgramHash(2));
+		out.putInt(keyframeInterval);
+	}
+
+	/**
+	 * Appends the world's current state as the next tick. Called by the World.
+	 */
+	public synchronized void recordTick(World world) {
+		if (failed)
+			return;
+		try {
+			if (blockTicks == keyframeInterval)
+				writeBlock();
+			boolean keyframe = blockTicks == 0;
+			if (keyframe) {
+				rawLength = 0;
+				putVarInt(tickCount);
+				last[0] = new RobotState();
+				last[1] = new RobotState();
+				lastBarrels.clear();
+			}
+			int flagsAt = rawLength;
+			putByte(0);
+			int flags = keyframe ? KEYFRAME : 0;
+			for (int i = 0; i < 2; i++) {
+				world.getRobot(i + 1).getState(current);
+				if (keyframe || !current.equals(last[i])) {
+					putRobot(current, last[i]);
+					last[i].set(current);
+					flags |= (i == 0) ? ROBOT1 : ROBOT2;
+				}
+			}
+			if (putBarrels(world.getAvailableFuel()))
+				flags |= BARRELS;
+			raw[flagsAt] = (byte) flags;
+			blockTicks++;
+			tickCount++;
+		} catch (IOException e) {
+			e.printStackTrace();
+			failed = true;
+		}
+	}
+
+	/**
+	 * Writes the last block and the index, and closes the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (blockTicks > 0)
+			writeBlock();
+		long indexOffset = channel.position() + out.position();
+		ensureRoom(4);
+		out.putInt(indexSize);
+		for (int i = 0; i < indexSize; i++) {
+			ensureRoom(12);
+			out.putInt(indexTicks[i]);
+			out.putLong(indexOffsets[i]);
+		}
+		ensureRoom(FOOTER_SIZE);
+		out.putLong(indexOffset);
+		out.putInt(tickCount);
+		out.putInt(INDEX_MAGIC);
+		flushBuffer();
+		channel.close();
+		deflater.end();
+	}
+
+	public int getTickCount() {
+		return tickCount;
+	}
+
+	private void putRobot(RobotState s, RobotState prev) {
+		int mask = 0;
+		if (s.x != prev.x)
+			mask |= F_X;
+		if (s.y != prev.y)
+			mask |= F_Y;
+		if (s.dir != prev.dir)
+			mask |= F_DIR;
+		if (s.fuel != prev.fuel)
+			mask |= F_FUEL;
+		if (s.shield != prev.shield)
+			mask |= F_SHIELD;
+		if (s.action != prev.action)
+			mask |= F_ACTION;
+		putByte(mask);
+		if ((mask & F_X) != 0)
+			putZigZag(s.x - prev.x);
+		if ((mask & F_Y) != 0)
+			putZigZag(s.y - prev.y);
+		if ((mask & F_DIR) != 0)
+			putVarInt(s.dir);
+		if ((mask & F_FUEL) != 0)
+			putZigZag(s.fuel - prev.fuel);
+		if ((mask & F_ACTION) != 0)
+			putVarInt(s.action);
+		// the shield bit is its own value, it simply toggles
+	}
+
+	/**
+	 * Writes the barrels added and removed since the last tick, if any.
+	 */
+	private boolean putBarrels(Set<Cell> barrels) {
+		// the world's set is shared with the robot threads, so work from a copy
+		currentBarrels.clear();
+		currentBarrels.addAll(barrels);
+		int added = 0, removed = 0;
+		for (Cell p : currentBarrels) {
+			if (!lastBarrels.contains(p))
+				added++;
+		}
+		for (Cell p : lastBarrels) {
+			if (!currentBarrels.contains(p))
+				removed++;
+		}
+		if (added == 0 && removed == 0)
+			return false;
+
+		putVarInt(added);
+		for (Cell p : currentBarrels) {
+			if (!lastBarrels.contains(p)) {
+				putVarInt(p.x);
+				putVarInt(p.y);
+			}
+		}
+		putVarInt(removed);
+		for (Cell p : lastBarrels) {
+			if (!currentBarrels.contains(p)) {
+				putVarInt(p.x);
+				putVarInt(p.y);
+			}
+		}
+		Set<Cell> swap = lastBarrels;
+		lastBarrels = currentBarrels;
+		currentBarrels = swap;
+		return true;
+	}
+
+	private void writeBlock() throws IOException {
+		deflater.reset();
+		deflater.setInput(raw, 0, rawLength);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+
+		if (indexSize == indexTicks.length) {
+			indexTicks = Arrays.copyOf(indexTicks, indexSize * 2);
+			indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+		}
+		indexTicks[indexSize] = tickCount - blockTicks;
+		indexOffsets[indexSize] = channel.position() + out.position();
+		indexSize++;
+
+		ensureRoom(8);
+		out.putInt(length);
+		out.putInt(rawLength);
+		for (int off = 0; off < length;) {
+			ensureRoom(1);
+			int n = Math.min(out.remaining(), length - off);
+			out.put(compressed, off, n);
+			off += n;
+		}
+		blockTicks = 0;
+		rawLength = 0;
+	}
+
+	private void ensureRoom(int bytes) throws IOException {
+		if (out.remaining() < bytes)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		out.flip();
+		while (out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+
+	private void putByte(int b) {
+		if (rawLength == raw.length)
+			raw = Arrays.copyOf(raw, raw.length * 2);
+		raw[rawLength++] = (byte) b;
+	}
+
+	private void putVarInt(int v) {
+		while ((v & ~0x7f) != 0) {
+			putByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		putByte(v);
+	}
+
+	private void putZigZag(int v) {
+		putVarInt((v << 1) ^ (v >> 31));
+	}
+}
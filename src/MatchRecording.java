@@ -0,0 +1,226 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads back a match written by MatchRecorder. Any tick can be read in any
+ * order: the index gives the block holding it, and only that block is
+ * decoded, from its keyframe up to the tick. Reading the ticks in order only
+ * decodes each block once.
+ */
+public class MatchRecording implements Closeable {
+
+	private final FileChannel channel;
+	private final int size, keyframeInterval, tickCount;
+	private final long seed, hash1, hash2;
+	private final int[] indexTicks;
+	private final long[] indexOffsets;
+
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[1 << 12];
+	private byte[] raw = new byte[1 << 12];
+	private int rawLength;
+
+	// the decoded state, at tick currentTick of block currentBlock
+	private int currentBlock = -1, currentTick = -1, position;
+	private final RobotState[] robots = { new RobotState(), new RobotState() };
+	private final Set<Cell> barrels = new HashSet<Cell>();
+
+	public MatchRecording(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		ByteBuffer header = read(0, MatchRecorder.HEADER_SIZE);
+		if (header.getInt() != MatchRecorder.MAGIC)
+			throw new IOException(file + " is not a match recording");
+		int version = header.getInt();
+		if (version != MatchRecorder.VERSION)
+			throw new IOException(file + " has unknown recording version " + version);
+		size = header.getInt();
+		seed = header.getLong();
+		hash1 = header.getLong();
+		hash2 = header.getLong();
+		keyframeInterval = header.getInt();
+
+		ByteBuffer footer = read(channel.size() - MatchRecorder.FOOTER_SIZE, MatchRecorder.FOOTER_SIZE);
+		long indexOffset = footer.getLong();
+		tickCount = footer.getInt();
+		if (footer.getInt() != MatchRecorder.INDEX_MAGIC)
+			throw new IOException(file + " was not closed properly");
+		ByteBuffer index = read(indexOffset, (int) (channel.size() - MatchRecorder.FOOTER_SIZE - indexOffset));
+		int blocks = index.getInt();
+		indexTicks = new int[blocks];
+		indexOffsets = new long[blocks];
+		for (int i = 0; i < blocks; i++) {
+			indexTicks[i] = index.getInt();
+			indexOffsets[i] = index.getLong();
+		}
+	}
+
+	public int getArenaSize() {
+		return size;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getProgramHash(int id) {
+		return (id == 1) ? hash1 : hash2;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * @return the number of ticks recorded, including the starting position as
+	 *         tick 0.
+	 */
+	public int getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Moves to the given tick. The state can then be read with getRobot and
+	 * getBarrels.
+	 */
+	public void seek(int tick) throws IOException {
+		if (tick < 0 || tick >= tickCount)
+			throw new IndexOutOfBoundsException("tick " + tick + " of " + tickCount);
+		int block = Arrays.binarySearch(indexTicks, tick);
+		if (block < 0)
+			block = -block - 2;
+		if (block != currentBlock || tick < currentTick) {
+			if (block != currentBlock)
+				loadBlock(block);
+			position = 0;
+			readVarInt(); // first tick of the block
+			currentTick = indexTicks[block] - 1;
+		}
+		while (currentTick < tick) {
+			readTick();
+			currentTick++;
+		}
+	}
+
+	public int getTick() {
+		return currentTick;
+	}
+
+	/**
+	 * @return the state of robot 1 or 2 at the current tick. The object is
+	 *         reused by the next seek.
+	 */
+	public RobotState getRobot(int id) {
+		return robots[id - 1];
+	}
+
+	/**
+	 * @return the barrels at the current tick. The set is reused by the next
+	 *         seek.
+	 */
+	public Set<Cell> getBarrels() {
+		return barrels;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		inflater.end();
+	}
+
+	private void loadBlock(int block) throws IOException {
+		ByteBuffer lengths = read(indexOffsets[block], 8);
+		int length = lengths.getInt();
+		rawLength = lengths.getInt();
+		if (compressed.length < length)
+			compressed = new byte[length];
+		if (raw.length < rawLength)
+			raw = new byte[rawLength];
+		ByteBuffer buf = ByteBuffer.wrap(compressed, 0, length);
+		long offset = indexOffsets[block] + 8;
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, offset + buf.position()) < 0)
+				throw new IOException("recording is truncated");
+		}
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int n = 0;
+			while (n < rawLength && !inflater.finished())
+				n += inflater.inflate(raw, n, rawLength - n);
+		} catch (DataFormatException e) {
+			throw new IOException("recording is corrupt", e);
+		}
+		currentBlock = block;
+	}
+
+	private void readTick() {
+		int flags = raw[position++];
+		if ((flags & MatchRecorder.KEYFRAME) != 0) {
+			robots[0].set(new RobotState());
+			robots[1].set(new RobotState());
+			barrels.clear();
+		}
+		if ((flags & MatchRecorder.ROBOT1) != 0)
+			readRobot(robots[0]);
+		if ((flags & MatchRecorder.ROBOT2) != 0)
+			readRobot(robots[1]);
+		if ((flags & MatchRecorder.BARRELS) != 0) {
+			for (int n = readVarInt(); n > 0; n--) {
+				barrels.add(new Cell(readVarInt(), readVarInt()));
+			}
+			for (int n = readVarInt(); n > 0; n--) {
+				barrels.remove(new Cell(readVarInt(), readVarInt()));
+			}
+		}
+	}
+
+	private void readRobot(RobotState s) {
+		int mask = raw[position++];
+		if ((mask & MatchRecorder.F_X) != 0)
+			s.x += readZigZag();
+		if ((mask & MatchRecorder.F_Y) != 0)
+			s.y += readZigZag();
+		if ((mask & MatchRecorder.F_DIR) != 0)
+			s.dir = readVarInt();
+		if ((mask & MatchRecorder.F_FUEL) != 0)
+			s.fuel += readZigZag();
+		if ((mask & MatchRecorder.F_ACTION) != 0)
+			s.action = readVarInt();
+		if ((mask & MatchRecorder.F_SHIELD) != 0)
+			s.shield = !s.shield;
+	}
+
+	private ByteBuffer read(long offset, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, offset + buf.position()) < 0)
+				throw new IOException("recording is truncated");
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private int readVarInt() {
+		int v = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = raw[position++];
+			v |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return v;
+		}
+	}
+
+	private int readZigZag() {
+		int v = readVarInt();
+		return (v >>> 1) ^ -(v & 1);
+	}
+}
@@ -0,0 +1,419 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs whole two-robot matches without a GUI, as fast as the robots allow,
+ * and prints one line of JSON per match. Nothing here touches Swing, so it is
+ * cheap to start many times from a script. Given a scenario corpus, it plays
+ * one match per episode, streaming the episodes from disk.
+ */
+public class MatchRunner {
+
+	private static final String USAGE = "Usage: MatchRunner red.prog blue.prog [-seed n | -fuel layout.txt |"
+			+ " -corpus scenarios.scn] [-ticks max] [-timeout ms] [-reps n] [-threads n] [-profile dir] [-record dir]"
+			+ " [-spin allow|report|wait(default)|stop] [-steps n] [-robotTicks n] [-robotTime ms] [-jmx on|off]";
+
+	private final File red, blue;
+	private final RobotProgramNode redProg, blueProg;
+	private final long redHash, blueHash;
+	private List<Cell> layout;
+	private int size = World.SIZE;
+	private long seed = System.nanoTime();
+	private int maxTicks = 10000;
+	// how long a robot may think before the tick goes ahead without it
+	private long tickTimeout = TimeUnit.MILLISECONDS.toNanos(100);
+	private RobotBudget budget = RobotBudget.UNLIMITED;
+	private Path recordDir;
+	// each thread plays its matches in a world of its own, reused each time
+	private final ThreadLocal<World> worlds = new ThreadLocal<World>();
+
+	public MatchRunner(File red, File blue) {
+		this(red, blue, null, null);
+	}
+
+	/**
+	 * Plays programs that record where their time and fuel go in the given
+	 * profilers. Either may be null to leave that program alone.
+	 */
+	public MatchRunner(File red, File blue, ProgramProfiler redProfiler, ProgramProfiler blueProfiler) {
+		this.red = red;
+		this.blue = blue;
+		redProg = parse(red, redProfiler);
+		blueProg = parse(blue, blueProfiler);
+		redHash = World.hash(red);
+		blueHash = World.hash(blue);
+	}
+
+	/**
+	 * Seed of the first match. Match n is played with seed + n.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Barrels to start every match with, instead of two random ones.
+	 */
+	public void setLayout(List<Cell> layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * Sets the arena size, which must match any scenarios played.
+	 */
+	public void setArenaSize(int size) {
+		this.size = size;
+	}
+
+	public void setMaxTicks(int maxTicks) {
+		this.maxTicks = maxTicks;
+	}
+
+	/**
+	 * Sets how long to wait for a robot that has not chosen its next action,
+	 * such as one looping over sensors, before the tick goes ahead anyway.
+	 */
+	public void setTickTimeout(long millis) {
+		tickTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Limits the work each robot's program may do in a match.
+	 */
+	public void setRobotBudget(RobotBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Records each match to match_n.rec in the given directory, which must
+	 * exist, for the GUI to replay or MatchExporter to turn into frames.
+	 */
+	public void setRecordDir(Path dir) {
+		recordDir = dir;
+	}
+
+	/**
+	 * Plays one match to the end, or to the tick limit.
+	 *
+	 * @return the result as a line of JSON
+	 */
+	public String play(int match) {
+		return play(match, null);
+	}
+
+	/**
+	 * Plays the given episode of a scenario corpus, numbering the match after
+	 * the episode.
+	 */
+	public String play(Scenario scenario) {
+		return play(scenario.getIndex(), scenario);
+	}
+
+	private String play(int match, Scenario scenario) {
+		long start = System.nanoTime();
+		World world = worlds.get();
+		if (world == null || world.getSize() != size)
+			world = new World(size);
+		else
+			world = world.reuseOrReplace();
+		worlds.set(world);
+		world.setSeed(seed + match);
+		world.setRobotProgram(1, redProg, redHash);
+		world.setRobotProgram(2, blueProg, blueHash);
+		world.setRobotBudget(1, budget);
+		world.setRobotBudget(2, budget);
+		if (scenario != null) {
+			world.setScenario(scenario);
+		} else if (layout != null) {
+			for (Cell p : layout) {
+				world.getAvailableFuel().add(p);
+			}
+		}
+		MatchRecorder recorder = null;
+		if (recordDir != null) {
+			try {
+				// the header holds the seed and programs, so they must be set
+				recorder = new MatchRecorder(recordDir.resolve("match_" + match + ".rec"), world);
+				world.setRecorder(recorder);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		world.start();
+		Robot r1 = world.getRobot(1), r2 = world.getRobot(2);
+		while (!r1.isDead() && !r2.isDead() && world.getTicks() < maxTicks) {
+			if (!world.step(tickTimeout))
+				break;
+		}
+		RobotState s1 = new RobotState(), s2 = new RobotState();
+		r1.getState(s1);
+		r2.getState(s2);
+		boolean dead1 = r1.isDead(), dead2 = r2.isDead();
+		world.reset();
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		String end, winner;
+		if (dead1 || dead2) {
+			end = "fuel";
+			winner = (dead1 && dead2) ? "draw" : dead1 ? "blue" : "red";
+		} else {
+			end = "ticks";
+			winner = (s1.fuel == s2.fuel) ? "draw" : (s1.fuel > s2.fuel) ? "red" : "blue";
+		}
+		String source = (scenario != null) ? ",\"episode\":" + scenario.getIndex() : ",\"seed\":" + (seed + match);
+		return "{\"match\":" + match + source + ",\"red\":" + json(red.getPath())
+				+ ",\"blue\":" + json(blue.getPath()) + ",\"winner\":\"" + winner + "\",\"end\":\"" + end
+				+ "\",\"ticks\":" + world.getTicks() + ",\"fuel1\":" + s1.fuel + ",\"fuel2\":" + s2.fuel
+				+ ",\"millis\":" + (System.nanoTime() - start) / 1000000 + "}";
+	}
+
+	/**
+	 * Reads a barrel layout, one "x y" pair per line.
+	 */
+	public static List<Cell> readLayout(File file) throws IOException {
+		List<Cell> points = new ArrayList<Cell>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+			String[] coords = line.split("\\s+");
+			if (coords.length != 2)
+				throw new IOException(file + ": expected \"x y\" but found \"" + line + "\"");
+			points.add(new Cell(Integer.parseInt(coords[0]), Integer.parseInt(coords[1])));
+		}
+		return points;
+	}
+
+	private static RobotProgramNode parse(File file, ProgramProfiler profiler) {
+		if (!file.isFile())
+			throw new IllegalArgumentException("Can't find program file " + file);
+		// a profiled program is left as parsed, so that its nodes can be timed
+		if (profiler != null)
+			return parsed(file, Parser.parseFile(file, profiler));
+		RobotProgramNode prog = parsed(file, Parser.parseFile(file));
+		RobotProgramNode compiled = PolicyCompiler.compile(prog);
+		if (compiled == prog)
+			CommonSubexpressions.eliminate(prog);
+		return compiled;
+	}
+
+	private static RobotProgramNode parsed(File file, RobotProgramNode prog) {
+		if (prog == null)
+			throw new IllegalArgumentException("Could not parse " + file);
+		for (String loop : SpinLoops.find(prog)) {
+			System.err.println(file + ": warning: " + loop + " can go round without acting");
+		}
+		return prog;
+	}
+
+	private static String json(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < ' ')
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * @return the exit status: 0 on success, 1 if the profiles could not be
+	 *         written, 2 for bad arguments
+	 */
+	static int run(String[] args, final PrintStream out, PrintStream err) throws InterruptedException {
+		if (args.length < 2) {
+			err.println(USAGE);
+			return 2;
+		}
+		Trace.disableAll();
+		// a loop that never acts would otherwise burn a core and hold up
+		// every tick for the whole timeout; -spin report keeps to the rules
+		Robot.setSpinPolicy(Robot.SpinPolicy.WAIT);
+		final MatchRunner runner;
+		ScenarioCorpus corpus = null;
+		int reps = -1, threads = 1;
+		int steps = 0, robotTicks = 0;
+		long robotMillis = 0;
+		boolean jmx = false;
+		File profileDir = null;
+		ProgramProfiler redProfiler = null, blueProfiler = null;
+		for (int i = 2; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-profile")) {
+				profileDir = new File(args[i + 1]);
+				redProfiler = new ProgramProfiler(args[0]);
+				blueProfiler = new ProgramProfiler(args[1]);
+			}
+		}
+		try {
+			runner = new MatchRunner(new File(args[0]), new File(args[1]), redProfiler, blueProfiler);
+			for (int i = 2; i < args.length; i += 2) {
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + args[i]);
+				String value = args[i + 1];
+				if (args[i].equals("-seed"))
+					runner.setSeed(Long.parseLong(value));
+				else if (args[i].equals("-fuel"))
+					runner.setLayout(readLayout(new File(value)));
+				else if (args[i].equals("-corpus"))
+					corpus = new ScenarioCorpus(new File(value).toPath());
+				else if (args[i].equals("-ticks"))
+					runner.setMaxTicks(Integer.parseInt(value));
+				else if (args[i].equals("-timeout"))
+					runner.setTickTimeout(Long.parseLong(value));
+				else if (args[i].equals("-reps"))
+					reps = Integer.parseInt(value);
+				else if (args[i].equals("-threads"))
+					threads = Integer.parseInt(value);
+				else if (args[i].equals("-spin"))
+					Robot.setSpinPolicy(Robot.SpinPolicy.valueOf(value.toUpperCase()));
+				else if (args[i].equals("-steps"))
+					steps = Integer.parseInt(value);
+				else if (args[i].equals("-robotTicks"))
+					robotTicks = Integer.parseInt(value);
+				else if (args[i].equals("-robotTime"))
+					robotMillis = Long.parseLong(value);
+				else if (args[i].equals("-jmx"))
+					jmx = onOff(value);
+				else if (args[i].equals("-record"))
+					runner.setRecordDir(Files.createDirectories(new File(value).toPath()));
+				else if (!args[i].equals("-profile"))
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+			runner.setRobotBudget(new RobotBudget(steps, robotTicks, robotMillis));
+			// the counters are kept either way; this only makes them readable
+			if (jmx)
+				EngineMetrics.register();
+		} catch (IllegalArgumentException e) {
+			// NumberFormatException is one of these too
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		} catch (IOException e) {
+			err.println(e.getMessage());
+			return 2;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		if (corpus != null) {
+			runner.setArenaSize(corpus.getArenaSize());
+			playCorpus(runner, corpus, (reps < 0) ? corpus.getCount() : reps, threads, pool, out);
+		} else {
+			for (int i = 0; i < Math.max(1, reps); i++) {
+				final int match = i;
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						String result = runner.play(match);
+						synchronized (out) {
+							out.println(result);
+							out.flush();
+						}
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+
+		if (profileDir != null) {
+			try {
+				Files.createDirectories(profileDir.toPath());
+				writeProfile(redProfiler, new File(profileDir, "red"));
+				writeProfile(blueProfiler, new File(profileDir, "blue"));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean onOff(String value) {
+		if (value.equals("on"))
+			return true;
+		if (value.equals("off"))
+			return false;
+		throw new IllegalArgumentException("Expected on or off, not " + value);
+	}
+
+	/**
+	 * Writes base.txt, the annotated program, and base.collapsed, its stacks
+	 * for a flame graph.
+	 */
+	private static void writeProfile(ProgramProfiler profiler, File base) throws IOException {
+		Writer w = Files.newBufferedWriter(new File(base.getPath() + ".txt").toPath(), StandardCharsets.UTF_8);
+		try {
+			profiler.writeAnnotated(w);
+		} finally {
+			w.close();
+		}
+		w = Files.newBufferedWriter(new File(base.getPath() + ".collapsed").toPath(), StandardCharsets.UTF_8);
+		try {
+			profiler.writeCollapsed(w);
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Plays the first episodes of the corpus. Each thread reads the next
+	 * episode into a scenario of its own and plays it, so the corpus streams
+	 * through without being loaded.
+	 */
+	private static void playCorpus(final MatchRunner runner, final ScenarioCorpus corpus, final int episodes,
+			int threads, ExecutorService pool, final PrintStream out) throws InterruptedException {
+		for (int t = 0; t < Math.max(1, threads); t++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					Scenario scenario = new Scenario();
+					try {
+						while (true) {
+							synchronized (corpus) {
+								if (corpus.getPosition() >= episodes || !corpus.next(scenario))
+									return;
+							}
+							String result = runner.play(scenario);
+							synchronized (out) {
+								out.println(result);
+								out.flush();
+							}
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		try {
+			corpus.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
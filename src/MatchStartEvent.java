@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for World.start.
+ */
+@Name("robogame.MatchStart")
+@Label("Match Start")
+@Category("RoboGame")
+@Description("A match starting")
+@StackTrace(false)
+class MatchStartEvent extends jdk.jfr.Event {
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Arena Size")
+	int size;
+
+	@Label("Barrels")
+	@Description("Barrels in the arena at the start")
+	int barrels;
+
+	@Label("Red Program")
+	@Description("Hash of the red robot's program source, 0 for the default program")
+	long redProgram;
+
+	@Label("Blue Program")
+	@Description("Hash of the blue robot's program source, 0 for the default program")
+	long blueProgram;
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one call to Parser.parseFile.
+ */
+@Name("robogame.Parse")
+@Label("Parse Program")
+@Category("RoboGame")
+@Description("Parsing of a robot program file")
+class ParseEvent extends jdk.jfr.Event {
+
+	@Label("File")
+	String file;
+
+	@Label("Nodes")
+	@Description("Statements, conditions and expressions parsed")
+	int nodes;
+
+	@Label("Parsed")
+	@Description("Whether the program parsed without errors")
+	boolean parsed;
+}
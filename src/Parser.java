@@ -2,7 +2,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.*;
 import java.util.regex.*;
-import javax.swing.JFileChooser;
 
 /**
  * The parser and interpreter. The top level parse function, a main method for testing, and several
@@ -10,12 +9,45 @@ import javax.swing.JFileChooser;
  */
 public class Parser {
 
-  static HashMap<String, Integer> variables = new HashMap<String, Integer>(); // Holds variables
+  static Set<String> variables = new HashSet<String>(); // Holds the names of the variables; each Robot has their values
+
+  // wraps the nodes of the program being parsed, if it is being profiled
+  private static final ThreadLocal<ProgramProfiler> profiler = new ThreadLocal<ProgramProfiler>();
+  // the nodes parsed so far, while a ParseEvent is being recorded
+  private static final ThreadLocal<int[]> nodeCount = new ThreadLocal<int[]>();
 
   /**
    * Top level parse method, called by the World
    */
   static RobotProgramNode parseFile(File code) {
+    long start = System.nanoTime();
+    ParseEvent event = new ParseEvent();
+    RobotProgramNode prog;
+    if (!event.isEnabled()) {
+      prog = parseSource(code);
+      EngineMetrics.parsed(prog != null, System.nanoTime() - start);
+      return prog;
+    }
+    int[] count = new int[1];
+    nodeCount.set(count);
+    event.begin();
+    try {
+      prog = parseSource(code);
+    } finally {
+      nodeCount.remove();
+    }
+    event.end();
+    EngineMetrics.parsed(prog != null, System.nanoTime() - start);
+    if (event.shouldCommit()) {
+      event.file = code.getPath();
+      event.nodes = count[0];
+      event.parsed = prog != null;
+      event.commit();
+    }
+    return prog;
+  }
+
+  private static RobotProgramNode parseSource(File code) {
     Scanner scan = null;
     try {
       scan = new Scanner(code);
@@ -38,6 +70,19 @@ public class Parser {
     return null;
   }
 
+  /**
+   * Parses a program with every statement, condition and expression wrapped
+   * to record what it costs in the given profiler.
+   */
+  static RobotProgramNode parseFile(File code, ProgramProfiler p) {
+    profiler.set(p);
+    try {
+      return parseFile(code);
+    } finally {
+      profiler.remove();
+    }
+  }
+
   /** For testing the parser without requiring the world */
 
   public static void main(String[] args) {
@@ -51,6 +96,9 @@ public class Parser {
           if (prog != null) {
             System.out.println("================\nProgram:");
             System.out.println(prog);
+            for (String loop : SpinLoops.find(prog)) {
+              System.out.println("Warning: " + loop + " can go round without acting");
+            }
           }
           System.out.println("=================");
         } else {
@@ -58,19 +106,8 @@ public class Parser {
         }
       }
     } else {
-      while (true) {
-        JFileChooser chooser = new JFileChooser(".");// System.getProperty("user.dir"));
-        int res = chooser.showOpenDialog(null);
-        if (res != JFileChooser.APPROVE_OPTION) {
-          break;
-        }
-        RobotProgramNode prog = parseFile(chooser.getSelectedFile());
-        System.out.println("Parsing completed");
-        if (prog != null) {
-          System.out.println("Program: \n" + prog);
-        }
-        System.out.println("=================");
-      }
+      // choosing files from a dialog needs Swing, so that lives with the GUI
+      System.out.println("Usage: Parser file.prog ... (or ParserChooser to pick files)");
     }
     System.out.println("Done");
   }
@@ -106,7 +143,27 @@ public class Parser {
 
   // utility methods for the parser
 
+  /**
+   * Called as each statement, condition and expression is started: counts it
+   * for the ParseEvent, and starts it in the profiler if there is one.
+   */
+  private static ProgramProfiler startNode() {
+    int[] count = nodeCount.get();
+    if (count != null)
+      count[0]++;
+    ProgramProfiler p = profiler.get();
+    if (p != null)
+      p.beginNode();
+    return p;
+  }
+
   private static RobotProgramNode parseStmt(Scanner s) {
+    ProgramProfiler p = startNode();
+    RobotProgramNode node = parseStmtNode(s);
+    return (p != null) ? p.wrapStatement(node) : node;
+  }
+
+  private static RobotProgramNode parseStmtNode(Scanner s) {
     if (s.hasNext("loop"))
       return parseLoop(s);
     if (s.hasNext("if"))
@@ -287,7 +344,7 @@ public class Parser {
     if (!gobble(OPENPAREN, s)) {
       fail("'(' expected atfer while", s);
     }
-    conditionNode c = (conditionNode) parseCondition(s);
+    conditionNode c = parseCondition(s);
     if (!gobble(CLOSEPAREN, s)) {
       fail("')' expected after condition", s);
     }
@@ -353,6 +410,12 @@ public class Parser {
    * Parsing Condition nodes
    */
   private static conditionNode parseCondition(Scanner s) {
+    ProgramProfiler p = startNode();
+    conditionNode node = parseConditionNode(s);
+    return (p != null) ? p.wrapCondition(node) : node;
+  }
+
+  private static conditionNode parseConditionNode(Scanner s) {
     if (s.hasNext("lt")) {
       return parseLT(s);
     } else if (s.hasNext("gt")) {
@@ -480,6 +543,12 @@ public class Parser {
    */
 
   private static expressionNode parseExprNode(Scanner s) {
+    ProgramProfiler p = startNode();
+    expressionNode node = parseExpressionNode(s);
+    return (p != null) ? p.wrapExpression(node) : node;
+  }
+
+  private static expressionNode parseExpressionNode(Scanner s) {
     if (s.hasNext(OP))
       return operatorNode(s);
     else if (s.hasNext(SENS))
@@ -667,12 +736,12 @@ public class Parser {
 
     // If the variable already exists, get its expression. Else, create a new variable with the
     // expression 0
-    if (variables.containsKey(name)) {
+    if (variables.contains(name)) {
       return new variableNode(name);
     }
 
     fail("Variables must be declared before they are used in the program", s);
-    variables.put(name, 0);
+    variables.add(name);
     return new variableNode(name);
   }
 
@@ -799,7 +868,7 @@ public class Parser {
 
 class moveNode implements ACTNode {
 
-  private expressionNode exp;
+  expressionNode exp;
 
   public moveNode(expressionNode e) {
     exp = e;
@@ -810,10 +879,7 @@ class moveNode implements ACTNode {
     if (exp == null) {
       robot.move();
     } else {
-      int stop = exp.evaluate(robot);
-      for (int i = 0; i < stop; i++) {
-        robot.move();
-      }
+      robot.move(exp.evaluate(robot));
     }
   }
 
@@ -930,9 +996,11 @@ class waitNode implements ACTNode {
     if (exp == null) {
       robot.idleWait();
     } else {
+      // as this has always been: for ever if stop is negative, otherwise
+      // not at all
       int stop = exp.evaluate(robot);
-      for (int i = 0; i > stop; i++) {
-        robot.idleWait();
+      while (stop < 0) {
+        robot.idleWait(Integer.MAX_VALUE);
       }
     }
   }
@@ -958,6 +1026,7 @@ class programNode implements RobotProgramNode {
   @Override
   public void execute(Robot robot) {
     for (RobotProgramNode n : children) {
+      robot.step();
       n.execute(robot);
     }
   }
@@ -979,7 +1048,7 @@ class programNode implements RobotProgramNode {
 
 class loopNode implements RobotProgramNode {
 
-  private RobotProgramNode block;
+  RobotProgramNode block;
 
   public loopNode(RobotProgramNode node) {
     block = node;
@@ -1002,9 +1071,9 @@ class loopNode implements RobotProgramNode {
 
 class ifNode implements RobotProgramNode {
 
-  private List<conditionNode> conditions;
-  private List<RobotProgramNode> blocks;
-  private RobotProgramNode elseNode;
+  List<conditionNode> conditions;
+  List<RobotProgramNode> blocks;
+  RobotProgramNode elseNode;
 
   public ifNode(List<conditionNode> c, List<RobotProgramNode> bl, RobotProgramNode e) {
     conditions = c;
@@ -1060,8 +1129,8 @@ class ifNode implements RobotProgramNode {
 
 class whileNode implements RobotProgramNode {
 
-  private conditionNode condition;
-  private RobotProgramNode block;
+  conditionNode condition;
+  RobotProgramNode block;
 
   public whileNode(conditionNode c, RobotProgramNode b) {
     condition = c;
@@ -1071,7 +1140,9 @@ class whileNode implements RobotProgramNode {
   @Override
   public void execute(Robot robot) {
     while (condition.evaluate(robot)) {
+      long progress = robot.getProgress();
       block.execute(robot);
+      robot.looped(progress, this);
     }
   }
 
@@ -1097,6 +1168,7 @@ class blockNode implements RobotProgramNode {
   @Override
   public void execute(Robot robot) {
     for (RobotProgramNode n : commands) {
+      robot.step();
       n.execute(robot);
     }
   }
@@ -1138,8 +1210,8 @@ class nullNode implements RobotProgramNode {
  */
 
 class condLTNode implements conditionNode {
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public condLTNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1163,8 +1235,8 @@ class condLTNode implements conditionNode {
 
 class condAndNode implements conditionNode {
 
-  private conditionNode lhs;
-  private conditionNode rhs;
+  conditionNode lhs;
+  conditionNode rhs;
 
   public condAndNode(conditionNode l, conditionNode r) {
     lhs = l;
@@ -1185,8 +1257,8 @@ class condAndNode implements conditionNode {
 
 
 class condEQNode implements conditionNode {
-  private expressionNode lhs; // sensor
-  private expressionNode rhs; // expression
+  expressionNode lhs; // sensor
+  expressionNode rhs; // expression
 
   public condEQNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1209,8 +1281,8 @@ class condEQNode implements conditionNode {
 
 
 class condGTNode implements conditionNode {
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public condGTNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1234,7 +1306,7 @@ class condGTNode implements conditionNode {
 
 class condNotNode implements conditionNode {
 
-  private conditionNode cond;
+  conditionNode cond;
 
   public condNotNode(conditionNode c) {
     cond = c;
@@ -1254,8 +1326,8 @@ class condNotNode implements conditionNode {
 
 class condOrNode implements conditionNode {
 
-  private conditionNode lhs;
-  private conditionNode rhs;
+  conditionNode lhs;
+  conditionNode rhs;
 
   public condOrNode(conditionNode l, conditionNode r) {
     lhs = l;
@@ -1279,8 +1351,8 @@ class condOrNode implements conditionNode {
  */
 class opAddNode implements operatorNode {
 
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public opAddNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1301,8 +1373,8 @@ class opAddNode implements operatorNode {
 
 class opSubNode implements operatorNode {
 
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public opSubNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1323,8 +1395,8 @@ class opSubNode implements operatorNode {
 
 class opMulNode implements operatorNode {
 
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public opMulNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1345,8 +1417,8 @@ class opMulNode implements operatorNode {
 
 class opDivNode implements operatorNode {
 
-  private expressionNode lhs;
-  private expressionNode rhs;
+  expressionNode lhs;
+  expressionNode rhs;
 
   public opDivNode(expressionNode l, expressionNode r) {
     lhs = l;
@@ -1463,7 +1535,7 @@ class sensWallDistNode implements sensorNode {
 
 class sensBarrelLRNode implements sensorNode {
 
-  private expressionNode exp;
+  expressionNode exp;
 
   public sensBarrelLRNode(expressionNode e) {
     exp = e;
@@ -1483,7 +1555,7 @@ class sensBarrelLRNode implements sensorNode {
 
 class sensBarrelFBNode implements sensorNode {
 
-  private expressionNode exp;
+  expressionNode exp;
 
   public sensBarrelFBNode(expressionNode e) {
     exp = e;
@@ -1514,6 +1586,10 @@ class assgnNode implements RobotProgramNode {
     this.expression = expression;
   }
 
+  public expressionNode getExpression() {
+    return expression;
+  }
+
   public void setExpression(expressionNode expression) {
     this.expression = expression;
   }
@@ -1523,7 +1599,7 @@ class assgnNode implements RobotProgramNode {
   }
 
   public void execute(Robot robot) {
-    Parser.variables.put(this.name, this.expression.evaluate(robot));
+    robot.setVariable(this.name, this.expression.evaluate(robot));
   }
 
   public String toString() {
@@ -1540,7 +1616,7 @@ class variableNode implements expressionNode {
   }
 
   public int evaluate(Robot robot) {
-    return Parser.variables.get(this.name);
+    return robot.getVariable(this.name);
   }
 
   public String toString() {
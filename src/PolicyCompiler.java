@@ -0,0 +1,524 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Compiles programs whose every action is a function of the sensors into a
+ * lookup table, so that choosing an action is one array index rather than a
+ * walk of the program.
+ * <p>
+ * A program qualifies when it is a single while loop with no variables and
+ * no nested loops, whose conditions only compare a sensor with a constant,
+ * and which takes at most one action each time round, after all its sensor
+ * readings. The constants split each sensor's values into ranges that the
+ * program cannot tell apart, so one reading from each range is enough: the
+ * loop is run once for every combination of ranges, against a robot that
+ * returns those readings and records what the program does, and the results
+ * fill the table.
+ * <p>
+ * Anything else, including a program wrapped by a ProgramProfiler, is
+ * returned as it was and interpreted.
+ */
+public class PolicyCompiler {
+
+	// the most table entries worth building
+	private static final int MAX_ENTRIES = 1 << 16;
+
+	// what a table entry does, besides an action: Robot.ACTION_ constants are
+	// actions, these set the shield
+	private static final int SHIELD_ON = -1, SHIELD_OFF = -2;
+	// the loop ends
+	private static final int[] END = new int[0];
+	// the program does not act, and so keeps reading the same sensors until
+	// the robot is cancelled; this is left to the interpreter
+	private static final int[] INTERPRET = new int[0];
+
+	/**
+	 * @return the program compiled to a table, or the program itself if it
+	 *         does not qualify
+	 */
+	public static RobotProgramNode compile(RobotProgramNode prog) {
+		if (!(prog instanceof programNode))
+			return prog;
+		List<RobotProgramNode> children = ((programNode) prog).children;
+		if (children.size() != 1 || !(children.get(0) instanceof whileNode))
+			return prog;
+		whileNode loop = (whileNode) children.get(0);
+		try {
+			PolicyCompiler compiler = new PolicyCompiler();
+			compiler.checkCondition(loop.condition);
+			compiler.checkStatement(loop.block);
+			return compiler.build(prog, loop);
+		} catch (NotCompilable e) {
+			return prog;
+		} catch (ArithmeticException e) {
+			// a division by zero while probing the loop; the interpreter will
+			// report it if the robot ever gets there
+			return prog;
+		}
+	}
+
+	private static class NotCompilable extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		NotCompilable(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/**
+	 * A sensor as the robot is asked for it, with the barrel it asks about.
+	 */
+	private static final class Sensor {
+		static final int FUEL = 0, OPP_LR = 1, OPP_FB = 2, NUM_BARRELS = 3, WALL_DIST = 4, BARREL_LR = 5,
+				BARREL_FB = 6;
+
+		final int kind, barrel;
+
+		Sensor(int kind, int barrel) {
+			this.kind = kind;
+			this.barrel = barrel;
+		}
+
+		int read(Robot robot) {
+			switch (kind) {
+			case FUEL:
+				return robot.getFuel();
+			case OPP_LR:
+				return robot.getOpponentLR();
+			case OPP_FB:
+				return robot.getOpponentFB();
+			case NUM_BARRELS:
+				return robot.numBarrels();
+			case WALL_DIST:
+				return robot.getDistanceToWall();
+			case BARREL_LR:
+				return robot.getBarrelLR(barrel);
+			default:
+				return robot.getBarrelFB(barrel);
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Sensor && ((Sensor) o).kind == kind && ((Sensor) o).barrel == barrel;
+		}
+
+		@Override
+		public int hashCode() {
+			return kind * 31 + barrel;
+		}
+	}
+
+	// the sensors the program reads, and the constants each is compared with
+	private final Map<Sensor, TreeSet<Integer>> cuts = new HashMap<Sensor, TreeSet<Integer>>();
+	private final Probe probe = new Probe();
+
+	private void checkStatement(RobotProgramNode node) {
+		if (node instanceof blockNode) {
+			for (RobotProgramNode n : ((blockNode) node).commands) {
+				checkStatement(n);
+			}
+		} else if (node instanceof ifNode) {
+			ifNode n = (ifNode) node;
+			for (conditionNode c : n.conditions) {
+				checkCondition(c);
+			}
+			for (RobotProgramNode b : n.blocks) {
+				checkStatement(b);
+			}
+			checkStatement(n.elseNode);
+		} else if (node instanceof moveNode) {
+			if (((moveNode) node).exp != null)
+				constant(((moveNode) node).exp);
+		} else if (node instanceof waitNode) {
+			if (((waitNode) node).exp != null)
+				constant(((waitNode) node).exp);
+		} else if (!(node instanceof nullNode || node instanceof turnLNode || node instanceof turnRNode
+				|| node instanceof turnAroundNode || node instanceof takeFuelNode || node instanceof shieldOnNode
+				|| node instanceof shieldOffNode)) {
+			throw new NotCompilable("cannot compile " + node.getClass().getSimpleName());
+		}
+	}
+
+	private void checkCondition(conditionNode node) {
+		if (node instanceof condLTNode) {
+			compare(((condLTNode) node).lhs, ((condLTNode) node).rhs);
+		} else if (node instanceof condGTNode) {
+			compare(((condGTNode) node).lhs, ((condGTNode) node).rhs);
+		} else if (node instanceof condEQNode) {
+			compare(((condEQNode) node).lhs, ((condEQNode) node).rhs);
+		} else if (node instanceof condAndNode) {
+			checkCondition(((condAndNode) node).lhs);
+			checkCondition(((condAndNode) node).rhs);
+		} else if (node instanceof condOrNode) {
+			checkCondition(((condOrNode) node).lhs);
+			checkCondition(((condOrNode) node).rhs);
+		} else if (node instanceof condNotNode) {
+			checkCondition(((condNotNode) node).cond);
+		} else {
+			throw new NotCompilable("cannot compile " + node.getClass().getSimpleName());
+		}
+	}
+
+	private void compare(expressionNode lhs, expressionNode rhs) {
+		Sensor sensor = sensor(lhs);
+		expressionNode other = rhs;
+		if (sensor == null) {
+			sensor = sensor(rhs);
+			other = lhs;
+		}
+		int value = constant(other);
+		if (sensor != null)
+			cuts.get(sensor).add(value);
+	}
+
+	/**
+	 * @return the sensor the expression reads, or null if it is not a sensor
+	 */
+	private Sensor sensor(expressionNode node) {
+		if (!(node instanceof sensorNode))
+			return null;
+		if (node instanceof sensBarrelLRNode)
+			constant(((sensBarrelLRNode) node).exp);
+		if (node instanceof sensBarrelFBNode)
+			constant(((sensBarrelFBNode) node).exp);
+		// ask the probe which sensor it reads, rather than trusting its name
+		probe.asked = null;
+		node.evaluate(probe);
+		if (probe.asked == null)
+			throw new NotCompilable(node + " reads no sensor");
+		if (!cuts.containsKey(probe.asked))
+			cuts.put(probe.asked, new TreeSet<Integer>());
+		return probe.asked;
+	}
+
+	private static int constant(expressionNode node) {
+		if (node instanceof opAddNode) {
+			constant(((opAddNode) node).lhs);
+			constant(((opAddNode) node).rhs);
+		} else if (node instanceof opSubNode) {
+			constant(((opSubNode) node).lhs);
+			constant(((opSubNode) node).rhs);
+		} else if (node instanceof opMulNode) {
+			constant(((opMulNode) node).lhs);
+			constant(((opMulNode) node).rhs);
+		} else if (node instanceof opDivNode) {
+			constant(((opDivNode) node).lhs);
+			constant(((opDivNode) node).rhs);
+		} else if (!(node instanceof numNode)) {
+			throw new NotCompilable(node + " is not a constant");
+		}
+		try {
+			// constants never look at the robot
+			return node.evaluate(null);
+		} catch (ArithmeticException e) {
+			throw new NotCompilable(node + " cannot be evaluated");
+		}
+	}
+
+	private RobotProgramNode build(RobotProgramNode prog, whileNode loop) {
+		Sensor[] sensors = cuts.keySet().toArray(new Sensor[0]);
+		int[][] sensorCuts = new int[sensors.length][];
+		long entries = 1;
+		for (int i = 0; i < sensors.length; i++) {
+			TreeSet<Integer> c = cuts.get(sensors[i]);
+			sensorCuts[i] = new int[c.size()];
+			int k = 0;
+			for (int v : c) {
+				sensorCuts[i][k++] = v;
+			}
+			entries *= 2 * c.size() + 1;
+			if (entries > MAX_ENTRIES)
+				throw new NotCompilable("too many sensor combinations");
+		}
+
+		probe.sensors = sensors;
+		probe.values = new int[sensors.length];
+		int[][] table = new int[(int) entries][];
+		// equal entries share one array
+		Map<List<Integer>, int[]> distinct = new HashMap<List<Integer>, int[]>();
+		int[] ranges = new int[sensors.length];
+		for (int index = 0; index < table.length; index++) {
+			for (int i = 0; i < sensors.length; i++) {
+				probe.values[i] = reading(sensorCuts[i], ranges[i]);
+			}
+			probe.effects.clear();
+			probe.acted = false;
+			if (!loop.condition.evaluate(probe)) {
+				table[index] = END;
+			} else {
+				loop.block.execute(probe);
+				if (!probe.acted) {
+					table[index] = INTERPRET;
+				} else {
+					List<Integer> key = new ArrayList<Integer>(probe.effects);
+					int[] effects = distinct.get(key);
+					if (effects == null) {
+						effects = new int[key.size()];
+						for (int e = 0; e < effects.length; e++) {
+							effects[e] = key.get(e);
+						}
+						distinct.put(key, effects);
+					}
+					table[index] = effects;
+				}
+			}
+			// the last sensor's range varies fastest, as in PolicyProgram.index
+			for (int i = sensors.length - 1; i >= 0 && ++ranges[i] == 2 * sensorCuts[i].length + 1; i--) {
+				ranges[i] = 0;
+			}
+		}
+		return new PolicyProgram(prog, loop, sensors, sensorCuts, table);
+	}
+
+	/**
+	 * @return a reading in the given range of a sensor: range 2i+1 is the i-th
+	 *         constant, and range 2i the readings below it and above the one
+	 *         before.
+	 */
+	private static int reading(int[] cuts, int range) {
+		if (range % 2 == 1)
+			return cuts[range / 2];
+		if (range == 0)
+			return (cuts.length == 0 || cuts[0] == Integer.MIN_VALUE) ? 0 : cuts[0] - 1;
+		// nothing may lie between two constants, in which case the range is
+		// never looked up
+		int below = cuts[range / 2 - 1];
+		return (below == Integer.MAX_VALUE) ? below : below + 1;
+	}
+
+	/**
+	 * A robot that answers sensors with set readings and records what the
+	 * program does with them.
+	 */
+	private static class Probe extends Robot {
+		Sensor[] sensors;
+		int[] values;
+		final List<Integer> effects = new ArrayList<Integer>();
+		boolean acted;
+		// the last sensor read
+		Sensor asked;
+
+		Probe() {
+			super(new World(), 0, 0, "probe", true);
+		}
+
+		private int sense(int kind, int barrel) {
+			asked = new Sensor(kind, barrel);
+			if (sensors == null)
+				return 0;
+			if (acted)
+				throw new NotCompilable("reads sensors after acting");
+			for (int i = 0; i < sensors.length; i++) {
+				if (sensors[i].equals(asked))
+					return values[i];
+			}
+			throw new NotCompilable("reads a sensor it does not compare");
+		}
+
+		private void act(int effect) {
+			if (acted)
+				throw new NotCompilable("acts more than once");
+			acted = true;
+			effects.add(effect);
+		}
+
+		@Override
+		public void move() {
+			act(ACTION_MOVE);
+		}
+
+		@Override
+		public void turnLeft() {
+			act(ACTION_TURN_LEFT);
+		}
+
+		@Override
+		public void turnRight() {
+			act(ACTION_TURN_RIGHT);
+		}
+
+		@Override
+		public void turnAround() {
+			act(ACTION_TURN_AROUND);
+		}
+
+		@Override
+		public void takeFuel() {
+			act(ACTION_TAKE_FUEL);
+		}
+
+		@Override
+		public void idleWait() {
+			act(ACTION_WAIT);
+		}
+
+		@Override
+		public void setShield(boolean shield) {
+			if (acted)
+				throw new NotCompilable("sets the shield after acting");
+			effects.add(shield ? SHIELD_ON : SHIELD_OFF);
+		}
+
+		@Override
+		public int getFuel() {
+			return sense(Sensor.FUEL, 0);
+		}
+
+		@Override
+		public int getOpponentLR() {
+			return sense(Sensor.OPP_LR, 0);
+		}
+
+		@Override
+		public int getOpponentFB() {
+			return sense(Sensor.OPP_FB, 0);
+		}
+
+		@Override
+		public int numBarrels() {
+			return sense(Sensor.NUM_BARRELS, 0);
+		}
+
+		@Override
+		public int getDistanceToWall() {
+			return sense(Sensor.WALL_DIST, 0);
+		}
+
+		@Override
+		public int getClosestBarrelLR() {
+			return sense(Sensor.BARREL_LR, 0);
+		}
+
+		@Override
+		public int getClosestBarrelFB() {
+			return sense(Sensor.BARREL_FB, 0);
+		}
+
+		@Override
+		public int getBarrelLR(int n) {
+			return sense(Sensor.BARREL_LR, n);
+		}
+
+		@Override
+		public int getBarrelFB(int n) {
+			return sense(Sensor.BARREL_FB, n);
+		}
+
+		@Override
+		public boolean isShieldOn() {
+			throw new NotCompilable("reads the shield");
+		}
+	}
+
+	/**
+	 * A compiled program: each time round the loop it reads the sensors,
+	 * works out which of their ranges they are in, and does what the table
+	 * says for that combination.
+	 */
+	static class PolicyProgram implements RobotProgramNode {
+		private final RobotProgramNode source;
+		private final whileNode loop;
+		private final Sensor[] sensors;
+		private final int[][] cuts;
+		private final int[][] table;
+
+		PolicyProgram(RobotProgramNode source, whileNode loop, Sensor[] sensors, int[][] cuts, int[][] table) {
+			this.source = source;
+			this.loop = loop;
+			this.sensors = sensors;
+			this.cuts = cuts;
+			this.table = table;
+		}
+
+		@Override
+		public void execute(Robot robot) {
+			while (true) {
+				long progress = robot.getProgress();
+				robot.step();
+				int[] effects = table[index(robot)];
+				if (effects == END)
+					return;
+				if (effects == INTERPRET) {
+					loop.block.execute(robot);
+					robot.looped(progress, loop);
+					continue;
+				}
+				for (int effect : effects) {
+					switch (effect) {
+					case SHIELD_ON:
+						robot.setShield(true);
+						break;
+					case SHIELD_OFF:
+						robot.setShield(false);
+						break;
+					case Robot.ACTION_MOVE:
+						robot.move();
+						break;
+					case Robot.ACTION_TURN_LEFT:
+						robot.turnLeft();
+						break;
+					case Robot.ACTION_TURN_RIGHT:
+						robot.turnRight();
+						break;
+					case Robot.ACTION_TURN_AROUND:
+						robot.turnAround();
+						break;
+					case Robot.ACTION_TAKE_FUEL:
+						robot.takeFuel();
+						break;
+					case Robot.ACTION_WAIT:
+						robot.idleWait();
+						break;
+					}
+				}
+				robot.looped(progress, loop);
+			}
+		}
+
+		private int index(Robot robot) {
+			int index = 0;
+			for (int i = 0; i < sensors.length; i++) {
+				int[] c = cuts[i];
+				int value = sensors[i].read(robot), range = 2 * c.length;
+				for (int k = 0; k < c.length; k++) {
+					if (value <= c[k]) {
+						range = (value == c[k]) ? 2 * k + 1 : 2 * k;
+						break;
+					}
+				}
+				index = index * (2 * c.length + 1) + range;
+			}
+			return index;
+		}
+
+		/**
+		 * @return the number of entries in the table
+		 */
+		int size() {
+			return table.length;
+		}
+
+		@Override
+		public String toString() {
+			return source.toString();
+		}
+	}
+
+	/**
+	 * Reports whether each program given compiles, and the size of its table.
+	 */
+	public static void main(String[] args) {
+		for (String file : args) {
+			RobotProgramNode prog = Parser.parseFile(new java.io.File(file));
+			if (prog == null)
+				continue;
+			RobotProgramNode compiled = compile(prog);
+			System.out.println(file + ": " + ((compiled instanceof PolicyProgram)
+					? "compiled to " + ((PolicyProgram) compiled).size() + " entries" : "interpreted"));
+		}
+	}
+}
@@ -0,0 +1,62 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * How far a robot's program had got at one of its actions: every value it
+ * had read from its sensors, in order, the number of actions it had taken,
+ * and whether it had its shield on. A program does the same again given the
+ * same values, so running it from the top against these brings it, and its
+ * variables, back to the same place; this is how a fork of a match carries
+ * on where its snapshot was taken.
+ * <p>
+ * Immutable. The values are shared with the log the robot goes on writing,
+ * which only ever appends to them, so a position costs the same whatever
+ * the length of the match.
+ */
+final class ProgramPosition {
+
+	static final ProgramPosition START = new ProgramPosition(null, new int[0], 0, 0, false, false);
+
+	// the values read before these, if any
+	private final ProgramPosition earlier;
+	private final int[] values;
+	private final int count;
+	final int actions;
+	final boolean shield;
+	// whether the program had ended, or been stopped
+	final boolean finished;
+
+	ProgramPosition(ProgramPosition earlier, int[] values, int count, int actions, boolean shield, boolean finished) {
+		this.earlier = earlier;
+		this.values = values;
+		this.count = count;
+		this.actions = actions;
+		this.shield = shield;
+		this.finished = finished;
+	}
+
+	/**
+	 * @return every value the program had read, oldest first. This copies
+	 *         them all, so it takes time in proportion to the match so far.
+	 */
+	int[] reads() {
+		Deque<ProgramPosition> parts = new ArrayDeque<ProgramPosition>();
+		int length = 0;
+		for (ProgramPosition p = this; p != null; p = p.earlier) {
+			parts.push(p);
+			length += p.count;
+		}
+		int[] all = new int[length];
+		int at = 0;
+		for (ProgramPosition p : parts) {
+			System.arraycopy(p.values, 0, all, at, p.count);
+			at += p.count;
+		}
+		return all;
+	}
+
+	@Override
+	public String toString() {
+		return actions + " actions" + (finished ? ", finished" : "");
+	}
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures where a robot program spends its time and fuel. A program parsed
+ * with Parser.parseFile(file, profiler) has every statement, condition and
+ * expression wrapped in a node that records, each time it runs, the time
+ * spent in it and its children, and the ticks and fuel that passed meanwhile.
+ * Programs parsed without a profiler have no wrappers and pay nothing.
+ * <p>
+ * Each robot thread records into its own call tree, so a profiled program can
+ * be run by many robots at once. The results should be written once they
+ * have all stopped.
+ */
+public class ProgramProfiler {
+
+	private final String name;
+
+	// the nodes of the program as parsed, and the ones still being parsed
+	private final List<Stats> roots = new ArrayList<Stats>();
+	private final Deque<List<Stats>> parsing = new ArrayDeque<List<Stats>>();
+
+	private final List<CallNode> threadRoots = new ArrayList<CallNode>();
+	private final ThreadLocal<CallNode> current = new ThreadLocal<CallNode>() {
+		@Override
+		protected CallNode initialValue() {
+			CallNode root = new CallNode(null, null);
+			synchronized (threadRoots) {
+				threadRoots.add(root);
+			}
+			return root;
+		}
+	};
+
+	/**
+	 * @param name
+	 *            what to call the program in the results, usually its file
+	 */
+	public ProgramProfiler(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * A node of the program: where it was in the source, and its totals over
+	 * every thread, filled in when the results are written.
+	 */
+	private static class Stats {
+		final String label;
+		final List<Stats> children;
+		long calls, totalNanos, selfNanos, ticks, fuel;
+
+		Stats(String label, List<Stats> children) {
+			this.label = label;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * A node as reached by one particular path from the top of the program,
+	 * on one thread. A program cannot call itself, so a call node is never
+	 * entered again before it is left.
+	 */
+	private static class CallNode {
+		final Stats stats;
+		final CallNode parent;
+		final List<CallNode> children = new ArrayList<CallNode>(2);
+		long calls, totalNanos, selfNanos, ticks, fuel;
+		// while the node is running
+		long start, childNanos;
+		int startTick, startFuel;
+
+		CallNode(Stats stats, CallNode parent) {
+			this.stats = stats;
+			this.parent = parent;
+		}
+
+		CallNode child(Stats s) {
+			for (int i = 0; i < children.size(); i++) {
+				CallNode c = children.get(i);
+				if (c.stats == s)
+					return c;
+			}
+			CallNode c = new CallNode(s, this);
+			children.add(c);
+			return c;
+		}
+	}
+
+	// Called by the parser: beginNode as it starts on a node, then the wrap
+	// method for its kind with the node it parsed. Nodes parsed in between
+	// are the new node's children.
+
+	void beginNode() {
+		parsing.push(new ArrayList<Stats>());
+	}
+
+	RobotProgramNode wrapStatement(final RobotProgramNode node) {
+		final Stats stats = endNode(node);
+		return new RobotProgramNode() {
+			@Override
+			public void execute(Robot robot) {
+				CallNode call = enter(stats, robot);
+				try {
+					node.execute(robot);
+				} finally {
+					exit(call, robot);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return node.toString();
+			}
+		};
+	}
+
+	conditionNode wrapCondition(final conditionNode node) {
+		final Stats stats = endNode(node);
+		return new conditionNode() {
+			@Override
+			public boolean evaluate(Robot robot) {
+				CallNode call = enter(stats, robot);
+				try {
+					return node.evaluate(robot);
+				} finally {
+					exit(call, robot);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return node.toString();
+			}
+		};
+	}
+
+	expressionNode wrapExpression(final expressionNode node) {
+		final Stats stats = endNode(node);
+		return new expressionNode() {
+			@Override
+			public int evaluate(Robot robot) {
+				CallNode call = enter(stats, robot);
+				try {
+					return node.evaluate(robot);
+				} finally {
+					exit(call, robot);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return node.toString();
+			}
+		};
+	}
+
+	private Stats endNode(Object node) {
+		Stats stats = new Stats(label(node), parsing.pop());
+		(parsing.isEmpty() ? roots : parsing.peek()).add(stats);
+		return stats;
+	}
+
+	private CallNode enter(Stats stats, Robot robot) {
+		CallNode call = current.get().child(stats);
+		current.set(call);
+		call.startTick = robot.getTick();
+		call.startFuel = robot.getFuelLevel();
+		call.childNanos = 0;
+		call.start = System.nanoTime();
+		return call;
+	}
+
+	private void exit(CallNode call, Robot robot) {
+		long total = System.nanoTime() - call.start;
+		call.calls++;
+		call.totalNanos += total;
+		call.selfNanos += total - call.childNanos;
+		call.ticks += robot.getTick() - call.startTick;
+		call.fuel += call.startFuel - robot.getFuelLevel();
+		call.parent.childNanos += total;
+		current.set(call.parent);
+	}
+
+	/**
+	 * Writes the program, a node per line and indented by nesting, with the
+	 * number of times each node ran, the milliseconds spent in it in total
+	 * and in itself rather than its children, and the ticks and fuel used
+	 * while it ran.
+	 */
+	public void writeAnnotated(Writer out) throws IOException {
+		totalUp();
+		out.write("Profile of " + name + "\n");
+		out.write(String.format("%10s %12s %12s %8s %8s%n", "calls", "total ms", "self ms", "ticks", "fuel"));
+		writeAnnotated(out, roots, "");
+	}
+
+	private void writeAnnotated(Writer out, List<Stats> nodes, String indent) throws IOException {
+		for (Stats s : nodes) {
+			out.write(String.format("%10d %12.3f %12.3f %8d %8d  %s%s%n", s.calls, s.totalNanos / 1e6,
+					s.selfNanos / 1e6, s.ticks, s.fuel, indent, s.label));
+			writeAnnotated(out, s.children, indent + "  ");
+		}
+	}
+
+	/**
+	 * Writes the microseconds spent in each node, with the nodes it was
+	 * reached through, in the collapsed stack format read by flame graph
+	 * tools: one "outer;...;inner micros" line per distinct path.
+	 */
+	public void writeCollapsed(Writer out) throws IOException {
+		Map<String, Long> stacks = new LinkedHashMap<String, Long>();
+		synchronized (threadRoots) {
+			for (CallNode root : threadRoots) {
+				collapse(root, frame(name), stacks);
+			}
+		}
+		for (Map.Entry<String, Long> e : stacks.entrySet()) {
+			if (e.getValue() > 0)
+				out.write(e.getKey() + " " + e.getValue() + "\n");
+		}
+	}
+
+	private static void collapse(CallNode call, String path, Map<String, Long> stacks) {
+		for (CallNode c : call.children) {
+			String p = path + ";" + frame(c.stats.label);
+			Long micros = stacks.get(p);
+			stacks.put(p, ((micros == null) ? 0 : micros) + c.selfNanos / 1000);
+			collapse(c, p, stacks);
+		}
+	}
+
+	/**
+	 * Adds up the call trees of every thread into the nodes of the program.
+	 */
+	private void totalUp() {
+		clear(roots);
+		synchronized (threadRoots) {
+			for (CallNode root : threadRoots) {
+				add(root);
+			}
+		}
+	}
+
+	private static void clear(List<Stats> nodes) {
+		for (Stats s : nodes) {
+			s.calls = s.totalNanos = s.selfNanos = s.ticks = s.fuel = 0;
+			clear(s.children);
+		}
+	}
+
+	private static void add(CallNode call) {
+		for (CallNode c : call.children) {
+			Stats s = c.stats;
+			s.calls += c.calls;
+			s.totalNanos += c.totalNanos;
+			s.selfNanos += c.selfNanos;
+			s.ticks += c.ticks;
+			s.fuel += c.fuel;
+			add(c);
+		}
+	}
+
+	/**
+	 * @return the node as printed, without any block it contains
+	 */
+	private static String label(Object node) {
+		String s = node.toString();
+		// some nodes cannot print themselves
+		if (s.startsWith(node.getClass().getName() + "@"))
+			return node.getClass().getSimpleName();
+		int brace = s.indexOf('{');
+		if (brace >= 0)
+			s = s.substring(0, brace);
+		s = s.trim();
+		return (s.length() > 60) ? s.substring(0, 57) + "..." : s;
+	}
+
+	/**
+	 * @return the label without the character that separates frames
+	 */
+	private static String frame(String label) {
+		return label.replace(';', ' ').trim();
+	}
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+
+/**
+ * A world whose robots never run. Instead it shows the states read from a
+ * MatchRecording, so a match can be watched again without parsing or
+ * executing either program.
+ */
+public class ReplayWorld extends World {
+
+	private final MatchRecording recording;
+	private final RobotState[] from = { new RobotState(), new RobotState() };
+	private int tick = -1;
+
+	public ReplayWorld(MatchRecording recording) {
+		super(recording.getArenaSize());
+		this.recording = recording;
+	}
+
+	public MatchRecording getRecording() {
+		return recording;
+	}
+
+	public int getTick() {
+		return tick;
+	}
+
+	/**
+	 * Shows the given tick, with each robot on its way to where it is at the
+	 * next tick.
+	 */
+	public synchronized void showTick(int tick) throws IOException {
+		if (tick == this.tick)
+			return;
+		recording.seek(tick);
+		from[0].set(recording.getRobot(1));
+		from[1].set(recording.getRobot(2));
+		availableFuel.clear();
+		availableFuel.addAll(recording.getBarrels());
+		if (tick + 1 < recording.getTickCount())
+			recording.seek(tick + 1);
+		robots[1].showState(from[0], recording.getRobot(1));
+		robots[2].showState(from[1], recording.getRobot(2));
+		this.tick = tick;
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void updateWorld() {
+	}
+
+	@Override
+	public boolean isReadyForUpdate() {
+		return false;
+	}
+}
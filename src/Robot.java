@@ -1,18 +1,10 @@
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Arc2D;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.util.Map;
 
 public class Robot {
 
@@ -28,6 +20,22 @@ public class Robot {
 	 */
 	public void move() {
 		debug("move");
+		aimMove();
+		processFuelAndBlock();
+		readState();
+	}
+
+	/**
+	 * Move forward n steps, one a tick, as if move had been called n times.
+	 * After the first step the world carries out the rest without waking the
+	 * program, unless a step would be blocked or the robot dies or is stopped,
+	 * in which case the steps left are taken one call at a time.
+	 */
+	public void move(int n) {
+		batch(ACTION_MOVE, n);
+	}
+
+	private void aimMove() {
 		currentAction = ACTION_MOVE;
 		if (dir == DIRECTION.NORTH)
 			targetY -= 1;
@@ -39,8 +47,8 @@ public class Robot {
 			targetX += 1;
 		targetX = Math.max(0, targetX);
 		targetY = Math.max(0, targetY);
-		targetX = Math.min(11, targetX);
-		targetY = Math.min(11, targetY);
+		targetX = Math.min(world.getSize() - 1, targetX);
+		targetY = Math.min(world.getSize() - 1, targetY);
 		Robot other = world.getOtherRobot(this);
 		if (other != null) {
 			if (other.targetX == targetX && other.targetY == targetY) {
@@ -49,8 +57,6 @@ public class Robot {
 				targetY = y;
 			}
 		}
-		processFuelAndBlock();
-		readState();
 	}
 
 	/**
@@ -130,8 +136,13 @@ public class Robot {
 	 * cannot steal fuel, but this robot will use up fuel faster.
 	 */
 	public void setShield(boolean shield) {
-		debug("shield " + (shield ? "on" : "off"));
+		// before a fork's snapshot, and so already as resume left it
+		if (replayActions > 0)
+			return;
+		debug(shield ? "shield on" : "shield off");
 		this.shield = shield;
+		lastAction = ACTION_SHIELD;
+		EngineMetrics.action(ACTION_SHIELD, -1);
 		readState();
 	}
 
@@ -155,6 +166,40 @@ public class Robot {
 		readState();
 	}
 
+	/**
+	 * Wait for n ticks, as if idleWait had been called n times, the world
+	 * carrying out all but the first without waking the program.
+	 */
+	public void idleWait(int n) {
+		batch(ACTION_WAIT, n);
+	}
+
+	private void batch(int action, int n) {
+		int left = n;
+		// a robot that does not wait for the world gains nothing, and a fork
+		// passes over the actions before its snapshot one at a time
+		if (!noWait && left > 1 && replayActions == 0) {
+			batchAction = action;
+			batchLeft = left - 1;
+			try {
+				batched(action);
+				left = batchLeft;
+			} finally {
+				batchLeft = 0;
+			}
+		}
+		for (; left > 0; left--) {
+			batched(action);
+		}
+	}
+
+	private void batched(int action) {
+		if (action == ACTION_MOVE)
+			move();
+		else
+			idleWait();
+	}
+
 	// Robot Sensors
 	// -------------
 
@@ -167,17 +212,26 @@ public class Robot {
 	public int getDistanceToWall() {
 		if (cancelled)
 			throw new RobotInterruptedException();
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.WALL_DIST, 0);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
 		switch (dir) {
 		case NORTH:
-			return y;
+			val = y;
+			break;
 		case SOUTH:
-			return 11 - y;
+			val = world.getSize() - 1 - y;
+			break;
 		case WEST:
-			return x;
+			val = x;
+			break;
 		case EAST:
-			return 11 - x;
+			val = world.getSize() - 1 - x;
+			break;
 		}
-		return 0;
+		return cache(SensorCache.WALL_DIST, 0, val);
 	}
 
 	/**
@@ -190,13 +244,15 @@ public class Robot {
 	public int getOpponentLR() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		if (otherRobotPos == null) {
-			debug("oppLR=INFINTY");
-			return INFINITY;
-		} else {
-			debug("oppLR=" + otherRobotPos.x);
-			return otherRobotPos.x;
-		}
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.OPP_LR, 0);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		val = (otherRobotPos == null) ? INFINITY : otherRobotPos.x;
+		if (debugging())
+			debug("oppLR=" + ((val == INFINITY) ? "INFINTY" : "" + val));
+		return cache(SensorCache.OPP_LR, 0, val);
 	}
 
 	/**
@@ -209,13 +265,15 @@ public class Robot {
 	public int getOpponentFB() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		if (otherRobotPos == null) {
-			debug("oppFB=INFINTY");
-			return INFINITY;
-		} else {
-			debug("oppFB=" + otherRobotPos.y);
-			return otherRobotPos.y;
-		}
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.OPP_FB, 0);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		val = (otherRobotPos == null) ? INFINITY : otherRobotPos.y;
+		if (debugging())
+			debug("oppFB=" + ((val == INFINITY) ? "INFINTY" : "" + val));
+		return cache(SensorCache.OPP_FB, 0, val);
 	}
 
 	/**
@@ -224,8 +282,15 @@ public class Robot {
 	public int numBarrels() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		debug("numBarrels = " + barrels.size());
-		return barrels.size();
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.NUM_BARRELS, 0);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		val = barrelCells.length;
+		if (debugging())
+			debug("numBarrels = " + val);
+		return cache(SensorCache.NUM_BARRELS, 0, val);
 	}
 
 	/**
@@ -264,9 +329,16 @@ public class Robot {
 	public int getBarrelLR(int n) {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).x;
-		debug(((n == 0) ? "" : (n + "th")) + "closestBarrelLR = " + ((val == INFINITY) ? "INFINITY" : "" + val));
-		return val;
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.BARREL_LR, n);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		List<Cell> barrels = getBarrels();
+		val = (n >= barrels.size()) ? INFINITY : barrels.get(n).x;
+		if (debugging())
+			debug(((n == 0) ? "" : (n + "th")) + "closestBarrelLR = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+		return cache(SensorCache.BARREL_LR, n, val);
 	}
 
 	/**
@@ -279,9 +351,16 @@ public class Robot {
 	public int getBarrelFB(int n) {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).y;
-		debug(((n == 0) ? "" : (n + "th")) + "closestBarrelFB = " + ((val == INFINITY) ? "INFINITY" : "" + val));
-		return val;
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.BARREL_FB, n);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		List<Cell> barrels = getBarrels();
+		val = (n >= barrels.size()) ? INFINITY : barrels.get(n).y;
+		if (debugging())
+			debug(((n == 0) ? "" : (n + "th")) + "closestBarrelFB = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+		return cache(SensorCache.BARREL_FB, n, val);
 	}
 
 	/**
@@ -292,8 +371,15 @@ public class Robot {
 	public int getFuel() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		debug("fuel=" + fuel);
-		return fuel;
+		if (replayActions > 0)
+			return replayed();
+		int val = cached(SensorCache.FUEL, 0);
+		if (val != SensorCache.MISSING)
+			return sensed(val);
+		val = fuel;
+		if (debugging())
+			debug("fuel=" + val);
+		return cache(SensorCache.FUEL, 0, val);
 	}
 
 	/**
@@ -302,10 +388,30 @@ public class Robot {
 	public boolean isShieldOn() {
 		if (cancelled)
 			throw new RobotInterruptedException();
+		if (replayActions > 0)
+			return replayed() != 0;
 		debug(shield ? "shield is on" : "shield is off");
+		sensed(shield ? 1 : 0);
 		return shield;
 	}
 
+	/**
+	 * @return the value of the program's variable, 0 until it is first set.
+	 */
+	public int getVariable(String name) {
+		Integer value = variables.get(name);
+		return (value == null) ? 0 : value;
+	}
+
+	/**
+	 * Sets a variable of the program. Each robot has variables of its own.
+	 */
+	public void setVariable(String name, int value) {
+		Integer old = variables.put(name, value);
+		if (old == null || old != value)
+			variableChanges++;
+	}
+
 	// =======================================================
 	// The internal workings of the robot, not needed by the parser or
 	// interpreter.
@@ -314,26 +420,87 @@ public class Robot {
 	public static final int
 	    ACTION_MOVE = 1, ACTION_TURN_LEFT = 2, ACTION_TURN_RIGHT = 3,
 	    ACTION_TURN_AROUND = 4, ACTION_TAKE_FUEL = 5, ACTION_WAIT = 6,
+	    ACTION_SHIELD = 7,
 	    INFINITY = Integer.MAX_VALUE;  
 
 	private static final int
 	    FUEL_IDLE = 3, FUEL_MOVE = 6, FUEL_TURN = 5, FUEL_SHIELD = 15;
 
-        private enum DIRECTION { NORTH, WEST, SOUTH, EAST }
+        enum DIRECTION { NORTH, WEST, SOUTH, EAST }
+
+	/**
+	 * What to do with a program caught going round a loop without acting:
+	 * let it, report it once and let it, have it wait for the next tick each
+	 * time round, or stop it. Only REPORT and ALLOW keep to the rules of the
+	 * game; the others change what such a program does. REPORT is the
+	 * default, for the GUI and the automarking printer; MatchRunner and the
+	 * Dashboard, which play for results, use WAIT.
+	 */
+	public enum SpinPolicy { ALLOW, REPORT, WAIT, STOP }
+
+	private static volatile SpinPolicy spinPolicy = SpinPolicy.REPORT;
+
+	// loop iterations a robot may run between two updates, even if each
+	// changes a variable, before it is taken to be spinning
+	private static final int MAX_ITERATIONS = 1 << 20;
+
+	// statements run between checks of the time and ticks
+	private static final int CHECK_INTERVAL = 1024;
 
         private World world;
-	private Point otherRobotPos;
-	private List<Point> barrels = new ArrayList<Point>();
+	private Cell otherRobotPos;
+	// the barrels as of the last update, and the same relative to the robot
+	// and sorted by distance, worked out when first needed
+	private Cell[] barrelCells = new Cell[0];
+	private List<Cell> barrels = new ArrayList<Cell>();
+	private final SensorCache sensors = new SensorCache();
 	private RobotProgramNode program;
 
-	private boolean shield, dead, finished, cancelled;
+	private boolean shield, dead, finished;
+	// read by a program that may not act again for a while
+	private volatile boolean cancelled;
 	private int fuel = 100, targetFuel;
 	private int x, y, targetX, targetY;
         private DIRECTION dir, targetDir;
     //	private int x, y, dir, targetX, targetY, targetDir;
-	private int currentAction;
+	private volatile int currentAction;
+	// the action recorded in the history, which outlives currentAction
+	private int lastAction;
+	// the action carried out in the tick most recently applied by the world
+	private int appliedAction;
+	private volatile boolean actionReady;
+	// the program's variables, and how many times one has changed, so that a
+	// loop can tell whether it got anywhere
+	private final Map<String, Integer> variables = new HashMap<String, Integer>();
+	private int variableChanges;
+	// loop iterations since the world last updated the robot
+	private int iterations;
+	// whether the robot has been reported going round without acting
+	private boolean spinReported;
+	// the action of a batch that the world carries out, the number of them
+	// still to do, and whether the world is to start the next one
+	private int batchAction, batchLeft;
+	private boolean batching;
+	// with snapshots on, the values the program has read from its sensors
+	// since logBase, the actions it has taken, and where it was as of the
+	// last of them
+	private ProgramPosition logBase = ProgramPosition.START, position = ProgramPosition.START;
+	private int[] logValues;
+	private int logCount, actionsTaken;
+	// in a fork, the values to give the program until it has passed over the
+	// actions it took before the snapshot, and whether the action it is
+	// taking was one of them
+	private int[] replayValues;
+	private int replayRead, replayActions;
+	private boolean passedOver;
+	private RobotBudget budget = RobotBudget.UNLIMITED;
+	// statements run since the last action, and the count at which to next
+	// check the budget
+	private int steps, checkAt = CHECK_INTERVAL;
+	// when the robot started running, and when its time runs out, if ever
+	private int startTick;
+	private long deadline;
 	private String colour;
-	private BufferedImage robotImage1, robotImage2, shieldImage;
 	private boolean noWait = false;
 
 	public Robot(World world, int x, int y, String colour, boolean noWait) {
@@ -344,27 +511,33 @@ public class Robot {
 		this.noWait = noWait;
 		targetX = x;
 		targetY = y;
-		dir = (y < World.SIZE / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
+		dir = (y < world.getSize() / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
 		targetDir = dir;
 		targetFuel = fuel;
-		try {
-			robotImage1 = ImageIO.read(new File("assets/robot_" + colour + "_1.png"));
-			robotImage2 = ImageIO.read(new File("assets/robot_" + colour + "_2.png"));
-			shieldImage = ImageIO.read(new File("assets/shield.png"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
 	}
 
-	private ArrayList<String> history = new ArrayList<>();
+	private final StateTrace history = new StateTrace();
 
 	/**
 	 * Encodes the state of the robot, used for automarking.
 	 */
 	public void readState() {
-		String state = "x=" + x + " y=" + y + " dir=" + dir + " fuel=" + fuel + " shield=" + shield;
-		history.add(state);
-		System.out.println(state);
+		if (passedOver) {
+			// recorded before the snapshot
+			passedOver = false;
+			return;
+		}
+		history.record(world.getTicks(), x, y, dir, fuel, shield, lastAction);
+		if (Trace.isOn(Trace.Category.STATE))
+			Trace.log(Trace.Category.STATE, history.format(history.size() - 1));
+	}
+
+	/**
+	 * @return every state recorded by readState, or the most recent ones if
+	 *         the history has been given a capacity.
+	 */
+	public StateTrace getHistory() {
+		return history;
 	}
 
 	/**
@@ -375,12 +548,29 @@ public class Robot {
 		program = prog;
 	}
 
+	/**
+	 * Limits the work the program may do. Call before the robot runs.
+	 */
+	public void setBudget(RobotBudget budget) {
+		this.budget = budget;
+		steps = 0;
+		checkAt = nextCheck();
+	}
+
+	public RobotBudget getBudget() {
+		return budget;
+	}
+
 	/**
 	 * Start this robot running. If it has a valid program,, then executes the
 	 * program, passing in the robot. Otherwise, calls the default program.
 	 */
 	public void run() {
-		if (program != null) {
+		startTick = world.getTicks();
+		deadline = (budget.nanos > 0) ? System.nanoTime() + budget.nanos : 0;
+		if (position.finished) {
+			// a fork of a robot whose program had already ended
+		} else if (program != null) {
 			program.execute(this);
 		} else {
 			defaultProgram();
@@ -406,102 +596,341 @@ public class Robot {
 	 */
 	public void setFinished(boolean finished) {
 		this.finished = finished;
-		if (finished)
+		if (finished) {
+			if (logValues != null)
+				position = new ProgramPosition(logBase, logValues, logCount, actionsTaken, shield, true);
+			sensors.flush();
 			updatePending();
+			world.robotReady();
+		}
 	}
 
 	/**
-	 * Called by the GUI only.
-	 * 
-	 * @param g2d
-	 * @param time
+	 * Copies the state as of the last world update into the given object.
 	 */
-	public void draw(Graphics2D g2d, double time) {
-		double x = this.x * (1 - time) + targetX * time;
-		double y = this.y * (1 - time) + targetY * time;
-		x = x * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
-		y = y * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
+	public void getState(RobotState state) {
+		state.x = x;
+		state.y = y;
+		state.dir = dir.ordinal();
+		state.fuel = fuel;
+		state.shield = shield;
+		state.action = appliedAction;
+	}
 
-		double angle = getAngle(dir);
-		switch (currentAction) {
-		case ACTION_TURN_LEFT:
-			angle -= Math.toRadians(90) * time;
-			break;
-		case ACTION_TURN_RIGHT:
-			angle += Math.toRadians(90) * time;
-			break;
-		case ACTION_TURN_AROUND:
-			angle += Math.toRadians(180) * time;
-			break;
-		}
+	/**
+	 * Copies the state the robot is moving towards during the current tick
+	 * into the given object, with the action it is carrying out. Together with
+	 * getState, this is what the GUI animates between.
+	 */
+	void getTarget(RobotState state) {
+		state.x = targetX;
+		state.y = targetY;
+		state.dir = targetDir.ordinal();
+		state.fuel = targetFuel;
+		state.shield = shield;
+		state.action = currentAction;
+	}
+
+	public String getColour() {
+		return colour;
+	}
 
-		AffineTransform trans = new AffineTransform();
-		trans.translate(x, y);
-		trans.rotate(angle);
-		trans.translate(-robotImage1.getWidth() / 2d, -robotImage1.getHeight() / 2d);
+	/**
+	 * @return the world's tick, for the ProgramProfiler.
+	 */
+	int getTick() {
+		return world.getTicks();
+	}
+
+	/**
+	 * @return the readings worked out since the last world update, for
+	 *         CommonSubexpressions.
+	 */
+	SensorCache getSensorCache() {
+		return sensors;
+	}
+
+	public static void setSpinPolicy(SpinPolicy policy) {
+		spinPolicy = policy;
+	}
+
+	/**
+	 * Called by the interpreter for each statement it runs. Stops the robot
+	 * if it has been cancelled or is over its budget, although the time and
+	 * ticks are only looked at every so often.
+	 */
+	void step() {
+		if (++steps >= checkAt)
+			checkBudget();
+	}
 
-		if (((int) (time * 10)) % 2 == 0 && currentAction < ACTION_TAKE_FUEL && currentAction > 0) {
-			g2d.drawImage(robotImage2, trans, null);
+	private void checkBudget() {
+		if (cancelled || Thread.currentThread().isInterrupted())
+			throw new RobotInterruptedException();
+		if (budget.steps > 0 && steps > budget.steps)
+			overBudget(budget.steps + " steps between actions");
+		if (budget.ticks > 0 && world.getTicks() - startTick >= budget.ticks)
+			overBudget(budget.ticks + " ticks");
+		if (deadline != 0 && System.nanoTime() - deadline > 0)
+			overBudget(budget.getMillis() + " ms");
+		if (budget.steps == 0)
+			steps = 0;
+		checkAt = nextCheck();
+	}
+
+	private int nextCheck() {
+		int next = steps + CHECK_INTERVAL;
+		return (budget.steps > 0) ? Math.min(next, budget.steps + 1) : next;
+	}
+
+	private void overBudget(String limit) {
+		EngineMetrics.overBudget();
+		System.err.println(colour + " robot stopped: over its budget of " + limit);
+		throw new RobotInterruptedException();
+	}
+
+	/**
+	 * @return a number that changes whenever the world updates the robot or
+	 *         the program changes a variable, so that between two equal ones
+	 *         the program has got nowhere
+	 */
+	long getProgress() {
+		return ((long) sensors.getUpdate() << 32) | (variableChanges & 0xffffffffL);
+	}
+
+	/**
+	 * Called by a loop each time round, with the progress from before its
+	 * block. A block that got nowhere will do the same again next time, so
+	 * the loop is spinning; so is one that has gone round too often since
+	 * the last update.
+	 */
+	void looped(long progress, Object loop) {
+		if (++iterations <= MAX_ITERATIONS && getProgress() != progress)
+			return;
+		SpinPolicy policy = spinPolicy;
+		if (policy == SpinPolicy.ALLOW || (policy == SpinPolicy.REPORT && spinReported))
+			return;
+		EngineMetrics.spin();
+		if (policy == SpinPolicy.WAIT) {
+			idleWait();
+			return;
+		}
+		String s = loop.toString();
+		s = (s.length() > 60) ? s.substring(0, 57) + "..." : s;
+		if (policy == SpinPolicy.REPORT) {
+			spinReported = true;
+			System.err.println(colour + " robot: " + s + " goes round without acting");
 		} else {
-			g2d.drawImage(robotImage1, trans, null);
+			System.err.println(colour + " robot stopped: " + s + " goes round without acting");
+			throw new RobotInterruptedException();
 		}
+	}
+
+	/**
+	 * @return the fuel as of the last world update, read without the
+	 *         debugging output of the getFuel sensor.
+	 */
+	int getFuelLevel() {
+		return fuel;
+	}
+
+	/**
+	 * Moves the robot to its starting position. Called by the World before the
+	 * match starts only.
+	 */
+	void place(int x, int y, DIRECTION dir) {
+		this.x = targetX = x;
+		this.y = targetY = y;
+		this.dir = targetDir = dir;
+	}
+
+	/**
+	 * Puts the robot back as it was made, at the given place, keeping its
+	 * program, budget and buffers. Called by the World, once the robot has
+	 * stopped, only.
+	 */
+	void reuse(int x, int y) {
+		place(x, y, (y < world.getSize() / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH);
+		fuel = targetFuel = 100;
+		shield = dead = finished = cancelled = false;
+		currentAction = lastAction = appliedAction = 0;
+		actionReady = false;
+		iterations = steps = 0;
+		variables.clear();
+		variableChanges = 0;
+		spinReported = false;
+		resume(ProgramPosition.START);
+		setLogging(logValues != null);
+		batchLeft = 0;
+		batching = false;
+		checkAt = nextCheck();
+		otherRobotPos = null;
+		barrelCells = new Cell[0];
+		barrels = null;
+		sensors.invalidate();
+		history.clear();
+	}
+
+	/**
+	 * Puts the robot in the given state, as a snapshot recorded it. Called by
+	 * the World before the match starts only.
+	 */
+	void restore(RobotState state) {
+		x = targetX = state.x;
+		y = targetY = state.y;
+		dir = targetDir = state.getDirection();
+		fuel = targetFuel = state.fuel;
+		shield = state.shield;
+		currentAction = state.action;
+	}
+
+	/**
+	 * Has the program, when it runs, pass over the actions it had taken as
+	 * of the given position, reading what it read then, and carry on from
+	 * there. Called by the World before the match starts only.
+	 */
+	void resume(ProgramPosition from) {
+		position = logBase = from;
+		// as the program had it, which a snapshot taken just after it turned
+		// the shield on or off is ahead of
+		shield = from.shield;
+		actionsTaken = replayActions = from.actions;
+		replayValues = (from.actions > 0) ? from.reads() : null;
+		replayRead = 0;
+		passedOver = false;
+	}
 
-		if (shield) {
-			trans = new AffineTransform();
-			trans.translate(x - 25, y - 25);
-			g2d.drawImage(shieldImage, trans, null);
+	/**
+	 * Starts or stops keeping what the program reads, for getPosition. Called
+	 * by the World before the match starts only.
+	 */
+	void setLogging(boolean on) {
+		// never the old array, which snapshots may share
+		logValues = on ? new int[64] : null;
+		logCount = 0;
+		logBase = position;
+	}
+
+	/**
+	 * @return where the program was as of its last action; only of use with
+	 *         logging on
+	 */
+	ProgramPosition getPosition() {
+		return position;
+	}
+
+	private void acted() {
+		actionsTaken++;
+		if (logValues != null)
+			position = new ProgramPosition(logBase, logValues, logCount, actionsTaken, shield, false);
+	}
+
+	/**
+	 * @return the sensor's reading since the last update, or MISSING if it
+	 *         has to be worked out. Nothing is reused while debugging, so
+	 *         that every reading is traced.
+	 */
+	private int cached(int sensor, int n) {
+		return debugging() ? SensorCache.MISSING : sensors.get(sensor, n);
+	}
+
+	/**
+	 * @return a reading just worked out, remembered until the next update
+	 */
+	private int cache(int sensor, int n, int value) {
+		return sensed(sensors.put(sensor, n, value));
+	}
+
+	private int sensed(int value) {
+		if (logValues != null) {
+			if (logCount == logValues.length)
+				logValues = Arrays.copyOf(logValues, logCount * 2);
+			logValues[logCount++] = value;
 		}
+		return value;
+	}
 
-		double fuelCurrent = targetFuel * time + fuel * (1 - time);
-		if (fuelCurrent <= 0)
-			dead = true;
+	private int replayed() {
+		if (replayRead < replayValues.length)
+			return replayValues[replayRead++];
+		// it read more than it did before the snapshot, so it is not the
+		// same program, or did not choose its actions in time
+		System.err.println(colour + " robot stopped: cannot carry on from the snapshot");
+		throw new RobotInterruptedException();
+	}
 
-		// draw fuel indicator
-		Arc2D fuelArc = new Arc2D.Double(x - 10, y - 10, 20, 20, -90, 360d * fuelCurrent / 100d, Arc2D.OPEN);
-		g2d.setStroke(new BasicStroke(3));
-		g2d.setColor(Color.GREEN);
-		g2d.draw(fuelArc);
+	/**
+	 * Passes over an action that a fork's program took before the snapshot,
+	 * as if the world had carried it out: the state it led to is the one the
+	 * snapshot restored.
+	 */
+	private void passOver() {
+		replayActions--;
+		if (replayActions == 0)
+			replayValues = null;
+		targetX = x;
+		targetY = y;
+		targetDir = dir;
+		currentAction = 0;
+		steps = 0;
+		checkAt = nextCheck();
+		iterations = 0;
+		sensors.invalidate();
+		passedOver = true;
+	}
+
+	/**
+	 * Places the robot part way through the tick between two recorded states.
+	 * Called by the ReplayWorld only.
+	 */
+	void showState(RobotState from, RobotState to) {
+		x = from.x;
+		y = from.y;
+		dir = from.getDirection();
+		fuel = from.fuel;
+		shield = from.shield;
+		targetX = to.x;
+		targetY = to.y;
+		targetDir = to.getDirection();
+		targetFuel = to.fuel;
+		currentAction = to.action;
+		dead = fuel <= 0;
 	}
 
 	public boolean isDead() {
 		return dead;
 	}
 
-	private Point getOtherRobotPosition() {
+	/**
+	 * Whether this robot has committed to its action for the current tick (or
+	 * has no more actions to take), so the world can advance without it
+	 * missing the tick. Called by the GUI only.
+	 */
+	public boolean isActionPending() {
+		return actionReady || finished;
+	}
+
+	private Cell getOtherRobotPosition() {
 		Robot other = world.getOtherRobot(this);
-		return (other != null) ? toRelative(new Point(other.x, other.y)) : null;
+		return (other != null) ? toRelative(new Cell(other.x, other.y)) : null;
 	}
 
-	private Point toRelative(Point p) {
+	private Cell toRelative(Cell p) {
 		int rx = p.x;
 		int ry = p.y;
 		switch (dir) {
 		case NORTH:
-			return new Point(rx - x, y - ry);
+			return new Cell(rx - x, y - ry);
 		case SOUTH:
-			return new Point(x - rx, ry - y);
+			return new Cell(x - rx, ry - y);
 		case WEST:
-			return new Point(y - ry, x - rx);
+			return new Cell(y - ry, x - rx);
 		case EAST:
-			return new Point(ry - y, rx - x);
+			return new Cell(ry - y, rx - x);
 		}
 		return null;
 	}
 
-	private double getAngle(DIRECTION direction) {
-		switch (direction) {
-		case NORTH:
-			return 0;
-		case WEST:
-			return Math.toRadians(270);
-		case SOUTH:
-			return Math.toRadians(180);
-		case EAST:
-			return Math.toRadians(90);
-		}
-		return 0;
-	}
-
 	private void processFuel() {
 		// use fuel
 		targetFuel = fuel;
@@ -519,16 +948,17 @@ public class Robot {
 			targetFuel -= FUEL_TURN;
 			break;
 		case ACTION_TAKE_FUEL:
-			if (world.getAvailableFuel().contains(new Point(x, y))) {
-				world.getAvailableFuel().remove(new Point(x, y));
+			if (world.getAvailableFuel().contains(new Cell(x, y))) {
+				world.getAvailableFuel().remove(new Cell(x, y));
 				targetFuel = 100;
 				return;
 			} else {// try to siphon fuel
 				Robot other = world.getOtherRobot(this);
 				if (other != null && !other.shield) {
-					Point otherP = getOtherRobotPosition(); // relative position
+					Cell otherP = getOtherRobotPosition(); // relative position
 					if (otherP.x == 0 && otherP.y == 1) {
-						System.out.println("Taking fuel");
+						if (Trace.isOn(Trace.Category.FUEL))
+							Trace.log(Trace.Category.FUEL, "Taking fuel");
 						int takeFuel = Math.min(25, other.targetFuel / 2);
 						takeFuel = Math.min(other.targetFuel, takeFuel);
 						targetFuel = Math.min(100, targetFuel + takeFuel);
@@ -548,19 +978,47 @@ public class Robot {
 	}
 
 	private void processFuelAndBlock() {
-		if (cancelled)
-			throw new RobotInterruptedException();
+		if (replayActions > 0) {
+			passOver();
+			return;
+		}
+		checkBudget();
+		steps = 0;
+		checkAt = nextCheck();
 		// use fuel
 		processFuel();
+		lastAction = currentAction;
+		acted();
+		sensors.flush();
 		if (this.noWait) {
+			EngineMetrics.action(lastAction, -1);
 			updatePending();
 		} else {
-			while (currentAction != 0) {
-				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
+			long start = System.nanoTime();
+			ActionEvent event = new ActionEvent();
+			event.begin();
+			int tick = world.getTicks();
+			actionReady = true;
+			world.robotReady();
+			synchronized (this) {
+				while (currentAction != 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// the world is being reset
+						throw new RobotInterruptedException();
+					}
 				}
 			}
+			event.end();
+			EngineMetrics.action(lastAction, System.nanoTime() - start);
+			if (event.shouldCommit()) {
+				event.seed = world.getSeed();
+				event.robot = colour;
+				event.action = ActionEvent.ACTIONS[lastAction];
+				event.tick = tick;
+				event.commit();
+			}
 		}
 	}
 
@@ -568,31 +1026,100 @@ public class Robot {
 	 * Called by the "World" only.
 	 */
 	public void updatePending() {
+		appliedAction = currentAction;
 		// reset turn
 		x = targetX;
 		y = targetY;
 		dir = targetDir;
 		fuel = targetFuel;
+		if (fuel <= 0)
+			dead = true;
 		if (finished) {
 			currentAction = ACTION_WAIT;
 			processFuel();
 		}
 		otherRobotPos = getOtherRobotPosition();
-		barrels = new ArrayList<Point>(world.getAvailableFuel());
-		for (int i = 0; i < barrels.size(); i++) {
-			Point p = toRelative(barrels.get(i));
-			barrels.set(i, p);
+		barrelCells = world.getAvailableFuel().toArray(new Cell[0]);
+		barrels = null;
+		sensors.invalidate();
+		iterations = 0;
+		if (batchLeft > 0 && !dead && !cancelled && !finished) {
+			// left asleep, for continueBatch
+			batching = true;
+			return;
 		}
-		Collections.sort(barrels, new Comparator<Point>() {
+		wake();
+	}
+
+	private void wake() {
+		synchronized (this) {
+			currentAction = 0;
+			actionReady = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Starts the next action of a batch, in place of the program, which is
+	 * left waiting. Called by the World at the end of a tick only.
+	 */
+	void continueBatch() {
+		if (!batching)
+			return;
+		batching = false;
+		if (cancelled || (budget.ticks > 0 && world.getTicks() - startTick >= budget.ticks)
+				|| (deadline != 0 && System.nanoTime() - deadline > 0)) {
+			// the program will find out when it next acts
+			wake();
+			return;
+		}
+		if (batchAction == ACTION_MOVE) {
+			aimMove();
+			if (targetX == x && targetY == y) {
+				// blocked, which the program may want to see for itself; the
+				// move it wakes in records the state, so this must not
+				wake();
+				return;
+			}
+		}
+		// as the program would have done on waking
+		readState();
+		if (batchAction == ACTION_MOVE) {
+			debug("move");
+		} else {
+			debug("wait");
+			currentAction = ACTION_WAIT;
+		}
+		batchLeft--;
+		processFuel();
+		lastAction = currentAction;
+		acted();
+		EngineMetrics.action(lastAction, -1);
+	}
+
+	/**
+	 * @return the barrels as of the last update, relative to the robot and
+	 *         closest first
+	 */
+	private List<Cell> getBarrels() {
+		List<Cell> sorted = barrels;
+		if (sorted != null)
+			return sorted;
+		sorted = new ArrayList<Cell>(barrelCells.length);
+		for (Cell p : barrelCells) {
+			sorted.add(toRelative(p));
+		}
+		Collections.sort(sorted, new Comparator<Cell>() {
 
 			@Override
-			public int compare(Point p1, Point p2) {
+			public int compare(Cell p1, Cell p2) {
 				int d1 = Math.abs(p1.x) + Math.abs(p1.y);
 				int d2 = Math.abs(p2.x) + Math.abs(p2.y);
 				return d1 - d2;
 			}
 		});
-		currentAction = 0;
+		barrels = sorted;
+		return sorted;
 	}
 
 	public String toString() {
@@ -600,12 +1127,19 @@ public class Robot {
 	}
 
 	/**
-	 * print a message about the action to System.out if debugging is currently
-	 * turned on.
+	 * Whether debug messages are wanted. Check this before building a message
+	 * that needs any string concatenation.
+	 */
+	private boolean debugging() {
+		return Trace.isOn(Trace.Category.DEBUG) && program != null;
+	}
+
+	/**
+	 * Trace a message about the action if debugging is currently turned on.
 	 */
 	private void debug(String action) {
-		if (RoboGame.debugDisplay && program != null) {
-			System.out.println(colour + " robot: " + action);
+		if (debugging()) {
+			Trace.log(Trace.Category.DEBUG, colour + " robot: " + action);
 		}
 	}
 
@@ -0,0 +1,51 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the work a robot's program may do, so that a program that never
+ * finishes cannot keep a thread busy for ever. A robot over any of them is
+ * stopped, as if its program had ended.
+ * <p>
+ * Steps are statements run by the interpreter, counted from the robot's last
+ * action. Ticks and time are counted from when the robot starts running. Each
+ * limit is off when 0.
+ */
+public final class RobotBudget {
+
+	public static final RobotBudget UNLIMITED = new RobotBudget(0, 0, 0);
+
+	final int steps, ticks;
+	final long nanos;
+
+	/**
+	 * @param steps
+	 *            statements the program may run between two actions
+	 * @param ticks
+	 *            ticks the robot may play for
+	 * @param millis
+	 *            wall clock time the robot may run for
+	 */
+	public RobotBudget(int steps, int ticks, long millis) {
+		if (steps < 0 || ticks < 0 || millis < 0)
+			throw new IllegalArgumentException("A budget cannot be negative");
+		this.steps = steps;
+		this.ticks = ticks;
+		this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	public int getSteps() {
+		return steps;
+	}
+
+	public int getTicks() {
+		return ticks;
+	}
+
+	public long getMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	@Override
+	public String toString() {
+		return "steps=" + steps + " ticks=" + ticks + " millis=" + getMillis();
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * The visible state of a robot at the end of a tick: where it is, which way
+ * it faces, its fuel and shield, and the action it carried out during the
+ * tick (one of the Robot.ACTION_ constants, or 0 for none). Used to record
+ * and replay matches without running any robot programs.
+ */
+public class RobotState {
+
+	public int x, y, dir, fuel, action;
+	public boolean shield;
+
+	public RobotState() {
+	}
+
+	public RobotState(RobotState other) {
+		set(other);
+	}
+
+	public void set(RobotState other) {
+		x = other.x;
+		y = other.y;
+		dir = other.dir;
+		fuel = other.fuel;
+		shield = other.shield;
+		action = other.action;
+	}
+
+	public Robot.DIRECTION getDirection() {
+		return Robot.DIRECTION.values()[dir];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RobotState))
+			return false;
+		RobotState s = (RobotState) o;
+		return x == s.x && y == s.y && dir == s.dir && fuel == s.fuel && shield == s.shield && action == s.action;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((((x * 31 + y) * 31 + dir) * 31 + fuel) * 31 + action) * 2 + (shield ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return "x=" + x + " y=" + y + " dir=" + getDirection() + " fuel=" + fuel + " shield=" + shield;
+	}
+}
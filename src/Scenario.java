@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * One episode of a scenario corpus: where the robots start, the barrels that
+ * are there from the start, and when and where more barrels appear. A world
+ * given a scenario places no barrels at random.
+ * <p>
+ * ScenarioCorpus decodes every episode into the same Scenario, so the fields
+ * are kept in primitive arrays that only grow, and nothing is allocated per
+ * episode once they are big enough.
+ */
+public class Scenario {
+
+	private static final Robot.DIRECTION[] DIRECTIONS = Robot.DIRECTION.values();
+
+	private int index;
+	private final int[] robotX = new int[3], robotY = new int[3], robotDir = new int[3];
+
+	private int barrelCount;
+	private int[] barrelX = new int[8], barrelY = new int[8];
+
+	// sorted by tick
+	private int spawnCount;
+	private int[] spawnTick = new int[8], spawnX = new int[8], spawnY = new int[8];
+
+	/**
+	 * @return the position of this episode in its corpus, from 0.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public int getRobotX(int id) {
+		return robotX[id];
+	}
+
+	public int getRobotY(int id) {
+		return robotY[id];
+	}
+
+	public Robot.DIRECTION getRobotDirection(int id) {
+		return DIRECTIONS[robotDir[id]];
+	}
+
+	public int getBarrelCount() {
+		return barrelCount;
+	}
+
+	public int getBarrelX(int n) {
+		return barrelX[n];
+	}
+
+	public int getBarrelY(int n) {
+		return barrelY[n];
+	}
+
+	public int getSpawnCount() {
+		return spawnCount;
+	}
+
+	/**
+	 * @return the tick at which the nth scheduled barrel appears.
+	 */
+	public int getSpawnTick(int n) {
+		return spawnTick[n];
+	}
+
+	public int getSpawnX(int n) {
+		return spawnX[n];
+	}
+
+	public int getSpawnY(int n) {
+		return spawnY[n];
+	}
+
+	/**
+	 * Empties the scenario, ready for it to be filled in again.
+	 */
+	public void clear(int index) {
+		this.index = index;
+		barrelCount = 0;
+		spawnCount = 0;
+	}
+
+	public void setRobot(int id, int x, int y, Robot.DIRECTION dir) {
+		robotX[id] = x;
+		robotY[id] = y;
+		robotDir[id] = dir.ordinal();
+	}
+
+	public void addBarrel(int x, int y) {
+		if (barrelCount == barrelX.length) {
+			barrelX = Arrays.copyOf(barrelX, barrelCount * 2);
+			barrelY = Arrays.copyOf(barrelY, barrelCount * 2);
+		}
+		barrelX[barrelCount] = x;
+		barrelY[barrelCount] = y;
+		barrelCount++;
+	}
+
+	/**
+	 * Schedules a barrel to appear at the given tick. Spawns must be added in
+	 * order of tick.
+	 */
+	public void addSpawn(int tick, int x, int y) {
+		if (spawnCount > 0 && tick < spawnTick[spawnCount - 1])
+			throw new IllegalArgumentException("spawn at tick " + tick + " is out of order");
+		if (spawnCount == spawnTick.length) {
+			spawnTick = Arrays.copyOf(spawnTick, spawnCount * 2);
+			spawnX = Arrays.copyOf(spawnX, spawnCount * 2);
+			spawnY = Arrays.copyOf(spawnY, spawnCount * 2);
+		}
+		spawnTick[spawnCount] = tick;
+		spawnX[spawnCount] = x;
+		spawnY[spawnCount] = y;
+		spawnCount++;
+	}
+
+	/**
+	 * Adds the barrels scheduled for the given tick, starting from the nth
+	 * scheduled barrel.
+	 *
+	 * @return the index of the first barrel scheduled for a later tick
+	 */
+	int spawn(int tick, int n, Set<Cell> fuel) {
+		while (n < spawnCount && spawnTick[n] <= tick) {
+			if (spawnTick[n] == tick)
+				fuel.add(new Cell(spawnX[n], spawnY[n]));
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("episode ").append(index);
+		for (int id = 1; id <= 2; id++) {
+			sb.append(" robot").append(id).append("=(").append(robotX[id]).append(',').append(robotY[id]).append(' ')
+					.append(getRobotDirection(id)).append(')');
+		}
+		sb.append(" barrels=").append(barrelCount).append(" spawns=").append(spawnCount);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,131 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the episodes of a corpus written by ScenarioWriter, in order, one at
+ * a time. The file is memory mapped a window at a time, so a corpus of any
+ * size streams from disk, and each episode is decoded straight into a
+ * Scenario supplied by the caller without creating any objects.
+ * <p>
+ * A corpus is not thread safe; threads sharing one must synchronize on it.
+ */
+public class ScenarioCorpus implements Closeable {
+
+	private static final int WINDOW_SIZE = 1 << 24;
+	private static final Robot.DIRECTION[] DIRECTIONS = Robot.DIRECTION.values();
+	// the most bytes a varint can take
+	private static final int MAX_VARINT = 5;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int size, count;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long offset = ScenarioWriter.HEADER_SIZE;
+	private int next;
+
+	public ScenarioCorpus(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		fileSize = channel.size();
+		if (fileSize < ScenarioWriter.HEADER_SIZE)
+			throw new IOException(file + " is not a scenario corpus");
+		map(0, ScenarioWriter.HEADER_SIZE);
+		if (window.getInt() != ScenarioWriter.MAGIC)
+			throw new IOException(file + " is not a scenario corpus");
+		int version = window.getInt();
+		if (version != ScenarioWriter.VERSION)
+			throw new IOException(file + " has unknown corpus version " + version);
+		size = window.getInt();
+		count = window.getInt();
+	}
+
+	public int getArenaSize() {
+		return size;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the index of the episode the next call to next will read.
+	 */
+	public int getPosition() {
+		return next;
+	}
+
+	/**
+	 * Decodes the next episode into the given scenario.
+	 *
+	 * @return false if every episode has been read
+	 */
+	public boolean next(Scenario s) throws IOException {
+		if (next == count)
+			return false;
+		map(offset, (int) Math.min(MAX_VARINT, fileSize - offset));
+		int length = readVarInt();
+		long body = windowStart + window.position();
+		if (body + length > fileSize)
+			throw new IOException("corpus is truncated at episode " + next);
+		map(body, length);
+
+		s.clear(next);
+		for (int id = 1; id <= 2; id++) {
+			int x = readVarInt(), y = readVarInt();
+			s.setRobot(id, x, y, DIRECTIONS[readVarInt()]);
+		}
+		for (int n = readVarInt(); n > 0; n--) {
+			s.addBarrel(readVarInt(), readVarInt());
+		}
+		int tick = 0;
+		for (int n = readVarInt(); n > 0; n--) {
+			tick += readVarInt();
+			s.addSpawn(tick, readVarInt(), readVarInt());
+		}
+		offset = body + length;
+		next++;
+		return true;
+	}
+
+	/**
+	 * Goes back to the first episode.
+	 */
+	public void rewind() {
+		offset = ScenarioWriter.HEADER_SIZE;
+		next = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Makes the given bytes readable through the window, positioned at the
+	 * first of them, mapping a new window only if they are not already in it.
+	 */
+	private void map(long from, int length) throws IOException {
+		if (window == null || from < windowStart || from + length > windowStart + window.limit()) {
+			windowStart = from;
+			long mapped = Math.min(fileSize - from, Math.max(WINDOW_SIZE, length));
+			window = channel.map(FileChannel.MapMode.READ_ONLY, from, mapped);
+		}
+		window.position((int) (from - windowStart));
+	}
+
+	private int readVarInt() {
+		int v = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = window.get();
+			v |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return v;
+		}
+	}
+}
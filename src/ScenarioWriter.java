@@ -0,0 +1,195 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes a scenario corpus, a file of many episodes to be read back one at a
+ * time by ScenarioCorpus.
+ * <p>
+ * Every number after the header is a varint, and each episode starts with its
+ * length so that a reader always knows how much of the file it needs. Spawn
+ * ticks are stored as the gap since the previous spawn.
+ *
+ * <pre>
+ * header:  MAGIC VERSION size episodeCount
+ * episode: length robot1 robot2 barrelCount (x y)* spawnCount (tickGap x y)*
+ * robot:   x y dir
+ * </pre>
+ */
+public class ScenarioWriter implements Closeable {
+
+	static final int MAGIC = 0x52425343; // RBSC
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4 + 4 + 4 + 4;
+
+	private final FileChannel channel;
+	private final ByteBuffer out = ByteBuffer.allocate(1 << 16);
+	private final int size;
+	private int count;
+
+	private byte[] raw = new byte[1 << 10];
+	private int rawLength;
+
+	public ScenarioWriter(Path file, int size) throws IOException {
+		this.size = size;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(size);
+		out.putInt(0); // the count is filled in by close
+	}
+
+	/**
+	 * Appends an episode. Its index is ignored, episodes are numbered in the
+	 * order they are written.
+	 */
+	public void write(Scenario s) throws IOException {
+		rawLength = 0;
+		for (int id = 1; id <= 2; id++) {
+			putCell(s.getRobotX(id), s.getRobotY(id));
+			putVarInt(s.getRobotDirection(id).ordinal());
+		}
+		putVarInt(s.getBarrelCount());
+		for (int n = 0; n < s.getBarrelCount(); n++) {
+			putCell(s.getBarrelX(n), s.getBarrelY(n));
+		}
+		putVarInt(s.getSpawnCount());
+		int tick = 0;
+		for (int n = 0; n < s.getSpawnCount(); n++) {
+			putVarInt(s.getSpawnTick(n) - tick);
+			tick = s.getSpawnTick(n);
+			putCell(s.getSpawnX(n), s.getSpawnY(n));
+		}
+
+		int length = rawLength;
+		putVarInt(length);
+		// the length was put after the body, so write it first
+		if (out.remaining() < rawLength - length)
+			flushBuffer();
+		out.put(raw, length, rawLength - length);
+		for (int off = 0; off < length;) {
+			if (!out.hasRemaining())
+				flushBuffer();
+			int n = Math.min(out.remaining(), length - off);
+			out.put(raw, off, n);
+			off += n;
+		}
+		count++;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		ByteBuffer header = ByteBuffer.allocate(4);
+		header.putInt(count).flip();
+		channel.write(header, 12);
+		channel.close();
+	}
+
+	private void putCell(int x, int y) {
+		if (x < 0 || y < 0 || x >= size || y >= size)
+			throw new IllegalArgumentException("(" + x + "," + y + ") is outside a " + size + " arena");
+		putVarInt(x);
+		putVarInt(y);
+	}
+
+	private void flushBuffer() throws IOException {
+		out.flip();
+		while (out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+
+	private void putVarInt(int v) {
+		if (rawLength + 5 > raw.length)
+			raw = Arrays.copyOf(raw, raw.length * 2);
+		while ((v & ~0x7f) != 0) {
+			raw[rawLength++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		raw[rawLength++] = (byte) v;
+	}
+
+	/**
+	 * Arguments are out.scn [-size cells] then either layout files, one
+	 * episode each with the robots in their usual corners, or -random count
+	 * [-seed n] [-ticks n] for episodes placing barrels the way World does.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ScenarioWriter out.scn [-size cells] (layout.txt ... | -random count [-seed n]"
+					+ " [-ticks n])");
+			return;
+		}
+		int size = World.SIZE, random = -1, ticks = 1000;
+		long seed = System.nanoTime();
+		int i = 1;
+		for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+			if (args[i].equals("-size"))
+				size = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-random"))
+				random = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-seed"))
+				seed = Long.parseLong(args[i + 1]);
+			else if (args[i].equals("-ticks"))
+				ticks = Integer.parseInt(args[i + 1]);
+			else
+				System.out.println("Ignoring unknown option " + args[i]);
+		}
+
+		ScenarioWriter writer = new ScenarioWriter(Paths.get(args[0]), size);
+		Scenario s = new Scenario();
+		try {
+			if (random >= 0) {
+				Random rand = new Random(seed);
+				for (int n = 0; n < random; n++) {
+					randomScenario(s, n, size, ticks, rand);
+					writer.write(s);
+				}
+			} else {
+				for (; i < args.length; i++) {
+					s.clear(writer.getCount());
+					setCorners(s, size);
+					for (Cell p : MatchRunner.readLayout(new File(args[i]))) {
+						s.addBarrel(p.x, p.y);
+					}
+					writer.write(s);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		System.out.println("Wrote " + writer.getCount() + " episodes to " + args[0]);
+	}
+
+	/**
+	 * Puts the robots where a World starts them.
+	 */
+	static void setCorners(Scenario s, int size) {
+		s.setRobot(1, 0, 0, Robot.DIRECTION.SOUTH);
+		s.setRobot(2, size - 1, size - 1, Robot.DIRECTION.NORTH);
+	}
+
+	private static void randomScenario(Scenario s, int index, int size, int ticks, Random rand) {
+		s.clear(index);
+		setCorners(s, size);
+		s.addBarrel(rand.nextInt(size), rand.nextInt(size));
+		s.addBarrel(rand.nextInt(size), rand.nextInt(size));
+		for (int tick = 1; tick <= ticks; tick++) {
+			if (rand.nextDouble() < 0.2)
+				s.addSpawn(tick, rand.nextInt(size), rand.nextInt(size));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/**
+ * The sensor readings a robot has worked out since the world last updated
+ * it. Readings only change when the world applies an action, but programs
+ * read the same sensors many times in between, so each sensor, and each
+ * barrel asked about, is worked out at most once per update and then reused.
+ * <p>
+ * Only the robot's own thread reads and fills the cache. The world empties it
+ * with invalidate, when the robot is waiting for its action to be applied.
+ */
+class SensorCache {
+
+	static final int FUEL = 0, OPP_LR = 1, OPP_FB = 2, NUM_BARRELS = 3, WALL_DIST = 4, BARREL_LR = 5, BARREL_FB = 6;
+	// returned by get for a reading that has to be worked out; no sensor
+	// reads this, INFINITY being MAX_VALUE
+	static final int MISSING = Integer.MIN_VALUE;
+	// barrels further away than this are worked out every time
+	private static final int BARRELS = 8;
+
+	private final int[] values = new int[BARREL_LR + 2 * BARRELS];
+	// the update each value was worked out in
+	private final int[] updates = new int[values.length];
+	private volatile int update = 1;
+	// values of the program's shared subexpressions, see CommonSubexpressions
+	private int[] slotValues = new int[0], slotUpdates = new int[0];
+	private long hits, misses;
+
+	private static int slot(int sensor, int barrel) {
+		if (sensor < BARREL_LR)
+			return sensor;
+		if (barrel < 0 || barrel >= BARRELS)
+			return -1;
+		return (sensor == BARREL_LR) ? BARREL_LR + barrel : BARREL_LR + BARRELS + barrel;
+	}
+
+	/**
+	 * @return the reading of the sensor since the last update, or MISSING
+	 */
+	int get(int sensor, int barrel) {
+		int slot = slot(sensor, barrel);
+		if (slot >= 0 && updates[slot] == update) {
+			hits++;
+			return values[slot];
+		}
+		misses++;
+		return MISSING;
+	}
+
+	/**
+	 * @return the value, having remembered it until the next update
+	 */
+	int put(int sensor, int barrel, int value) {
+		int slot = slot(sensor, barrel);
+		if (slot >= 0) {
+			values[slot] = value;
+			updates[slot] = update;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value of a shared subexpression since the last update, or
+	 *         MISSING
+	 */
+	int getSlot(int slot) {
+		return (slot < slotUpdates.length && slotUpdates[slot] == update) ? slotValues[slot] : MISSING;
+	}
+
+	int putSlot(int slot, int value) {
+		if (slot >= slotUpdates.length) {
+			slotValues = Arrays.copyOf(slotValues, slot + 1);
+			slotUpdates = Arrays.copyOf(slotUpdates, slot + 1);
+		}
+		slotValues[slot] = value;
+		slotUpdates[slot] = update;
+		return value;
+	}
+
+	/**
+	 * @return a number that changes each time the world updates the robot
+	 */
+	int getUpdate() {
+		return update;
+	}
+
+	/**
+	 * Forgets every reading. Called by the robot when the world updates it.
+	 */
+	void invalidate() {
+		update++;
+	}
+
+	/**
+	 * Adds the hits and misses since the last flush to the EngineMetrics.
+	 */
+	void flush() {
+		if (hits + misses > 0)
+			EngineMetrics.sensorReads(hits, misses);
+		hits = misses = 0;
+	}
+}
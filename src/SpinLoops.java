@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the loops of a program that can go round without acting. Until a
+ * robot acts the world cannot update it, so its sensors cannot change, and a
+ * loop that goes round without acting may go round for ever, burning a core
+ * while it waits for a tick that its robot never asks for. Robot.looped
+ * catches such loops as they run; this finds the ones that might, before
+ * the program is played.
+ * <p>
+ * A loop is reported if some path through its block runs no action, taking
+ * every if and while either way. It may still never take that path, or change
+ * a variable each time it does and so finish, so this is a warning only.
+ */
+public class SpinLoops {
+
+	/**
+	 * @return the loops that can go round without acting, each as its while
+	 *         and condition, outermost first
+	 */
+	public static List<String> find(RobotProgramNode prog) {
+		List<String> loops = new ArrayList<String>();
+		mayNotAct(prog, loops);
+		return loops;
+	}
+
+	/**
+	 * Adds the loops inside the node that can go round without acting.
+	 *
+	 * @return whether the node can finish without acting
+	 */
+	private static boolean mayNotAct(RobotProgramNode node, List<String> loops) {
+		if (node instanceof programNode || node instanceof blockNode) {
+			List<RobotProgramNode> commands = (node instanceof programNode) ? ((programNode) node).children
+					: ((blockNode) node).commands;
+			boolean mayNotAct = true;
+			for (RobotProgramNode n : commands) {
+				// keep going, to find the loops further on
+				mayNotAct &= mayNotAct(n, loops);
+			}
+			return mayNotAct;
+		} else if (node instanceof ifNode) {
+			ifNode n = (ifNode) node;
+			boolean mayNotAct = false;
+			for (RobotProgramNode b : n.blocks) {
+				mayNotAct |= mayNotAct(b, loops);
+			}
+			// without an else, none of the blocks need run
+			return mayNotAct(n.elseNode, loops) | mayNotAct;
+		} else if (node instanceof whileNode) {
+			whileNode n = (whileNode) node;
+			int at = loops.size();
+			if (mayNotAct(n.block, loops))
+				loops.add(at, "while(" + n.condition + ")");
+			// the condition may be false to begin with
+			return true;
+		} else if (node instanceof loopNode) {
+			// which runs its block once
+			return mayNotAct(((loopNode) node).block, loops);
+		} else if (node instanceof moveNode) {
+			// move(n) does nothing unless n is positive
+			return ((moveNode) node).exp != null;
+		} else if (node instanceof waitNode) {
+			return ((waitNode) node).exp != null;
+		}
+		// the shield and assignments take no time; other actions do, and
+		// unknown nodes, such as those of a ProgramProfiler, are given the
+		// benefit of the doubt
+		return node instanceof nullNode || node instanceof shieldOnNode || node instanceof shieldOffNode
+				|| node instanceof assgnNode;
+	}
+}
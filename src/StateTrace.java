@@ -0,0 +1,208 @@
+/**
+ * The states a robot has been in after each of its actions, used for
+ * automarking. Each field is kept in its own primitive array rather than as
+ * a formatted string per action, and is only turned into text when asked.
+ * With a capacity set, only the most recent states are kept.
+ */
+public class StateTrace {
+
+	private static final int INITIAL_LENGTH = 64;
+	private static final Robot.DIRECTION[] DIRECTIONS = Robot.DIRECTION.values();
+
+	private int[] tick = new int[INITIAL_LENGTH];
+	private int[] x = new int[INITIAL_LENGTH];
+	private int[] y = new int[INITIAL_LENGTH];
+	private int[] fuel = new int[INITIAL_LENGTH];
+	private byte[] dir = new byte[INITIAL_LENGTH];
+	private byte[] action = new byte[INITIAL_LENGTH];
+	private boolean[] shield = new boolean[INITIAL_LENGTH];
+
+	// the records are held in a ring starting at start
+	private int start, size;
+	private int capacity;
+	private long dropped;
+
+	/**
+	 * Creates a trace that keeps every state.
+	 */
+	public StateTrace() {
+		this(0);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of most recent states to keep, or 0 for all of them
+	 */
+	public StateTrace(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Changes how many of the most recent states are kept, 0 meaning all of
+	 * them. Older states are dropped if there are too many.
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("negative capacity " + capacity);
+		this.capacity = capacity;
+		if (capacity > 0 && size > capacity) {
+			dropped += size - capacity;
+			start = (start + size - capacity) % tick.length;
+			size = capacity;
+		}
+		if (capacity > 0 && tick.length > capacity)
+			resize(capacity);
+	}
+
+	public void record(int tick, int x, int y, Robot.DIRECTION dir, int fuel, boolean shield, int action) {
+		int i;
+		if (capacity > 0 && size == capacity) {
+			// full, so overwrite the oldest
+			i = start;
+			start = (start + 1) % this.tick.length;
+			dropped++;
+		} else {
+			if (size == this.tick.length)
+				resize(capacity > 0 ? Math.min(capacity, size * 2) : size * 2);
+			i = (start + size) % this.tick.length;
+			size++;
+		}
+		this.tick[i] = tick;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.dir[i] = (byte) dir.ordinal();
+		this.fuel[i] = fuel;
+		this.shield[i] = shield;
+		this.action[i] = (byte) action;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return how many states have been dropped to stay within the capacity.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	public void clear() {
+		start = 0;
+		size = 0;
+		dropped = 0;
+	}
+
+	// Accessors for the nth kept state, oldest first.
+
+	public int getTick(int n) {
+		return tick[index(n)];
+	}
+
+	public int getX(int n) {
+		return x[index(n)];
+	}
+
+	public int getY(int n) {
+		return y[index(n)];
+	}
+
+	public Robot.DIRECTION getDir(int n) {
+		return DIRECTIONS[dir[index(n)]];
+	}
+
+	public int getFuel(int n) {
+		return fuel[index(n)];
+	}
+
+	public boolean getShield(int n) {
+		return shield[index(n)];
+	}
+
+	/**
+	 * @return one of the Robot.ACTION_ constants
+	 */
+	public int getAction(int n) {
+		return action[index(n)];
+	}
+
+	/**
+	 * @return the nth kept state in the format printed by Robot.readState
+	 */
+	public String format(int n) {
+		int i = index(n);
+		return "x=" + x[i] + " y=" + y[i] + " dir=" + DIRECTIONS[dir[i]] + " fuel=" + fuel[i] + " shield=" + shield[i];
+	}
+
+	/**
+	 * Compares the positions, directions, fuel and shield of two traces, which
+	 * is what automarking compares.
+	 *
+	 * @return the index of the first state that differs, the length of the
+	 *         shorter trace if one is a prefix of the other, or -1 if they are
+	 *         the same
+	 */
+	public int firstDifference(StateTrace other) {
+		int n = Math.min(size, other.size);
+		for (int k = 0; k < n; k++) {
+			int i = index(k), j = other.index(k);
+			if (x[i] != other.x[j] || y[i] != other.y[j] || dir[i] != other.dir[j] || fuel[i] != other.fuel[j]
+					|| shield[i] != other.shield[j])
+				return k;
+		}
+		return (size == other.size) ? -1 : n;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < size; n++) {
+			sb.append(format(n)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private int index(int n) {
+		if (n < 0 || n >= size)
+			throw new IndexOutOfBoundsException("state " + n + " of " + size);
+		return (start + n) % tick.length;
+	}
+
+	/**
+	 * Moves the records to arrays of the given length, oldest first.
+	 */
+	private void resize(int length) {
+		tick = unwrap(tick, length);
+		x = unwrap(x, length);
+		y = unwrap(y, length);
+		fuel = unwrap(fuel, length);
+		dir = unwrap(dir, length);
+		action = unwrap(action, length);
+		shield = unwrap(shield, length);
+		start = 0;
+	}
+
+	private int[] unwrap(int[] a, int length) {
+		int[] b = new int[length];
+		int first = Math.min(size, a.length - start);
+		System.arraycopy(a, start, b, 0, first);
+		System.arraycopy(a, 0, b, first, size - first);
+		return b;
+	}
+
+	private byte[] unwrap(byte[] a, int length) {
+		byte[] b = new byte[length];
+		int first = Math.min(size, a.length - start);
+		System.arraycopy(a, start, b, 0, first);
+		System.arraycopy(a, 0, b, first, size - first);
+		return b;
+	}
+
+	private boolean[] unwrap(boolean[] a, int length) {
+		boolean[] b = new boolean[length];
+		int first = Math.min(size, a.length - start);
+		System.arraycopy(a, start, b, 0, first);
+		System.arraycopy(a, 0, b, first, size - first);
+		return b;
+	}
+}
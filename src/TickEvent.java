@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one World.updateWorld: spawning barrels and
+ * applying both robots' actions.
+ */
+@Name("robogame.Tick")
+@Label("World Tick")
+@Category("RoboGame")
+@Description("One update of the world")
+@StackTrace(false)
+class TickEvent extends jdk.jfr.Event {
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Tick")
+	@Description("The tick the update finished")
+	int tick;
+
+	@Label("Barrels")
+	@Description("Barrels in the arena after the update")
+	int barrels;
+
+	@Label("Red Fuel")
+	int fuel1;
+
+	@Label("Blue Fuel")
+	int fuel2;
+}
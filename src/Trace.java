@@ -0,0 +1,75 @@
+/**
+ * Global switches and destination for trace output. Each category can be
+ * turned on and off on its own, and callers test isOn before building any
+ * string, so a category that is off costs a single field read. Everything is
+ * off until a program that wants the output, such as the GUI or the
+ * printer, turns it on.
+ */
+public class Trace {
+
+	public enum Category {
+		/** The robot state after each action, used for automarking. */
+		STATE,
+		/** Every action and sensor reading, as shown by the Debug menu. */
+		DEBUG,
+		/** Fuel changing hands between robots. */
+		FUEL
+	}
+
+	private static volatile int enabled;
+	private static volatile TraceSink sink;
+
+	public static boolean isOn(Category category) {
+		return (enabled & mask(category)) != 0;
+	}
+
+	public static synchronized void setEnabled(Category category, boolean on) {
+		enabled = on ? (enabled | mask(category)) : (enabled & ~mask(category));
+	}
+
+	/**
+	 * Turns every category on.
+	 */
+	public static synchronized void enableAll() {
+		for (Category c : Category.values()) {
+			enabled |= mask(c);
+		}
+	}
+
+	/**
+	 * Turns every category off.
+	 */
+	public static synchronized void disableAll() {
+		enabled = 0;
+	}
+
+	public static void log(Category category, String message) {
+		getSink().write(category, message);
+	}
+
+	/**
+	 * Replaces where trace output goes. By default it is written to
+	 * System.out by an AsyncTraceSink that loses nothing.
+	 */
+	public static synchronized void setSink(TraceSink newSink) {
+		if (sink != null)
+			sink.flush();
+		sink = newSink;
+	}
+
+	private static TraceSink getSink() {
+		TraceSink s = sink;
+		if (s == null) {
+			synchronized (Trace.class) {
+				if (sink == null)
+					sink = new AsyncTraceSink(System.out);
+				s = sink;
+			}
+		}
+		return s;
+	}
+
+	private static int mask(Category category) {
+		return 1 << category.ordinal();
+	}
+}
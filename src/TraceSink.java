@@ -0,0 +1,14 @@
+/**
+ * Somewhere for the robots' trace output to go. Writers check
+ * Trace.isOn before building a message, so a sink is only called for
+ * categories that are switched on.
+ */
+public interface TraceSink {
+
+	public void write(Trace.Category category, String message);
+
+	/**
+	 * Blocks until everything written so far has been delivered.
+	 */
+	public void flush();
+}
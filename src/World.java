@@ -1,48 +1,328 @@
-
-import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class World {
 
 	public static final int SIZE = 12;
 
-	protected Set<Point> availableFuel = Collections.newSetFromMap(new ConcurrentHashMap<Point, Boolean>());
-	private Random rand = new Random();
+	// the robots of every world run on these threads, which are kept for the
+	// next match rather than started afresh each time
+	private static final ExecutorService ROBOT_THREADS = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "robot-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	// how long reset waits for the robots to stop
+	private static final long JOIN_MILLIS = 1000;
+
+	protected Set<Cell> availableFuel = Collections.newSetFromMap(new ConcurrentHashMap<Cell, Boolean>());
+	private long seed = new Random().nextLong();
+	private WorldRandom rand = new WorldRandom(seed);
+	// both replaced rather than changed, so that snapshots can share them
+	private RobotProgramNode[] programs = new RobotProgramNode[3];
+	private long[] programHashes = new long[3];
+	private MatchRecorder recorder;
+	private Scenario scenario;
+	// the next barrel of the scenario's spawn schedule
+	private int nextSpawn;
 	protected Robot[] robots;
+	private final int size;
+	private volatile int ticks;
+	private boolean snapshots;
+	private volatile WorldSnapshot snapshot;
+	// the flight recorder event for the match, from start until it ends
+	private MatchEvent match;
+	// the threads running the robots, while they are, and the count of those
+	// still to stop
+	private final Thread[] threads = new Thread[3];
+	private CountDownLatch running;
 
 	public World() {
-		robots = new Robot[] { null, new Robot(this, 0, 0, "red", false), new Robot(this, SIZE - 1, SIZE - 1, "blue", false) };
+		this(SIZE);
+	}
+
+	/**
+	 * Creates a square arena of the given number of cells a side, with the
+	 * robots in opposite corners.
+	 */
+	public World(int size) {
+		this.size = size;
+		robots = new Robot[] { null, new Robot(this, 0, 0, "red", false), new Robot(this, size - 1, size - 1, "blue", false) };
 	}
 
 	/**
-	 * This world can no longer be used after this call.
+	 * Creates a world in the state of the snapshot, with the same programs.
+	 */
+	World(WorldSnapshot from) {
+		this(from.size);
+		seed = from.seed;
+		rand = new WorldRandom(0);
+		rand.state = from.randState;
+		programs = from.programs;
+		programHashes = from.programHashes;
+		scenario = from.scenario;
+		nextSpawn = from.nextSpawn;
+		ticks = from.tick;
+		for (Cell barrel : from.barrels) {
+			availableFuel.add(barrel);
+		}
+		for (int id = 1; id <= 2; id++) {
+			robots[id].setProgram(programs[id]);
+			robots[id].restore(from.robots[id]);
+			robots[id].resume(from.positions[id]);
+		}
+		// the robots' sensors need both of them in place
+		for (int id = 1; id <= 2; id++) {
+			robots[id].updatePending();
+		}
+	}
+
+	/**
+	 * Stops the robots, waiting a while for their threads to finish. This
+	 * world can no longer be used after this call, unless reuse says so.
 	 */
 	public void reset() {
+		endMatch("stopped");
 		availableFuel.clear();
 		for (int i = 1; i <= 2; i++) {
 			robots[i].updatePending();
 			robots[i].cancel();
 		}
+		CountDownLatch latch = running;
+		if (latch == null)
+			return;
+		synchronized (threads) {
+			for (Thread t : threads) {
+				if (t != null)
+					t.interrupt();
+			}
+		}
+		try {
+			if (!latch.await(JOIN_MILLIS, TimeUnit.MILLISECONDS)) {
+				EngineMetrics.robotsLeaked(latch.getCount());
+				System.err.println(latch.getCount() + " robot(s) still running " + JOIN_MILLIS + " ms after reset");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
-	public Set<Point> getAvailableFuel() {
+	/**
+	 * Makes a world that has been reset ready for another match, as if it
+	 * had just been made but keeping its robots' programs and budgets, and
+	 * the buffers of the world and robots: no barrels, no ticks, a new random
+	 * seed, and the robots back in their corners with full fuel. A scenario
+	 * or recorder must be set again.
+	 *
+	 * @return false if a robot of the last match has not stopped, in which
+	 *         case the world cannot be used again
+	 */
+	public boolean reuse() {
+		CountDownLatch latch = running;
+		if (latch != null && latch.getCount() > 0)
+			return false;
+		running = null;
+		availableFuel.clear();
+		ticks = 0;
+		scenario = null;
+		nextSpawn = 0;
+		recorder = null;
+		snapshot = null;
+		robots[1].reuse(0, 0);
+		robots[2].reuse(size - 1, size - 1);
+		setSeed(new Random().nextLong());
+		return true;
+	}
+
+	/**
+	 * Makes a world that has been reset ready for another match: this one,
+	 * if reuse can, or else a new one of the same size with the same
+	 * programs and budgets.
+	 *
+	 * @return the world to play the next match in
+	 */
+	public World reuseOrReplace() {
+		if (reuse())
+			return this;
+		World world = new World(size);
+		for (int id = 1; id <= 2; id++) {
+			world.setRobotProgram(id, programs[id], programHashes[id]);
+			world.setRobotBudget(id, robots[id].getBudget());
+		}
+		return world;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public Set<Cell> getAvailableFuel() {
 		return availableFuel;
 	}
 
 	public void updateWorld() {
-		addFuel(false);
+		long allocated = EngineMetrics.tickStarted();
+		TickEvent event = new TickEvent();
+		event.begin();
+		if (scenario != null)
+			nextSpawn = scenario.spawn(ticks + 1, nextSpawn, availableFuel);
+		else
+			addFuel(false);
+		if (snapshots)
+			snapshot = takeSnapshot(ticks + 1, true);
 		for (int i = 1; i <= 2; i++) {
 			robots[i].updatePending();
 		}
+		ticks++;
+		if (recorder != null)
+			recorder.recordTick(this);
+		event.end();
+		EngineMetrics.tickEnded(allocated);
+		if (event.shouldCommit()) {
+			event.seed = seed;
+			event.tick = ticks;
+			event.barrels = availableFuel.size();
+			event.fuel1 = robots[1].getFuelLevel();
+			event.fuel2 = robots[2].getFuelLevel();
+			event.commit();
+		}
+		if (robots[1].isDead() || robots[2].isDead())
+			endMatch(robots[1].isDead() ? (robots[2].isDead() ? "draw" : "blue") : "red");
+		for (int i = 1; i <= 2; i++) {
+			robots[i].continueBatch();
+		}
+	}
+
+	/**
+	 * Commits the match event, the first time the match is seen to end.
+	 */
+	private synchronized void endMatch(String result) {
+		if (match == null)
+			return;
+		EngineMetrics.matchEnded();
+		match.end();
+		if (match.shouldCommit()) {
+			match.seed = seed;
+			match.ticks = ticks;
+			match.result = result;
+			match.fuel1 = robots[1].getFuelLevel();
+			match.fuel2 = robots[2].getFuelLevel();
+			match.commit();
+		}
+		match = null;
+	}
+
+	/**
+	 * Makes where fuel appears repeatable. Call before start.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		rand.setSeed(seed);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return a hash of the source of the program loaded into the given robot,
+	 *         or 0 if it is running the default program.
+	 */
+	public long getProgramHash(int id) {
+		return programHashes[id];
+	}
+
+	/**
+	 * Plays out the given episode instead of placing barrels at random: the
+	 * robots start where it says, with its barrels, and more barrels appear
+	 * only when its schedule says. Call before start, and leave the scenario
+	 * alone until the match is over.
+	 */
+	public void setScenario(Scenario scenario) {
+		this.scenario = scenario;
+		nextSpawn = 0;
+		availableFuel.clear();
+		for (int n = 0; n < scenario.getBarrelCount(); n++) {
+			availableFuel.add(new Cell(scenario.getBarrelX(n), scenario.getBarrelY(n)));
+		}
+		for (int id = 1; id <= 2; id++) {
+			robots[id].place(scenario.getRobotX(id), scenario.getRobotY(id), scenario.getRobotDirection(id));
+		}
+	}
+
+	/**
+	 * Records every tick of the match, from start on, to the given recorder.
+	 */
+	public void setRecorder(MatchRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * @return the number of times the world has been updated.
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Whether both robots have chosen their action for this tick, so that an
+	 * early update will not make either of them miss a turn.
+	 */
+	public boolean isReadyForUpdate() {
+		return robots[1].isActionPending() && robots[2].isActionPending();
+	}
+
+	/**
+	 * Waits until both robots have chosen their action, or the timeout has
+	 * passed, and then updates the world. This is how headless and turbo
+	 * matches run as fast as the robots allow.
+	 *
+	 * @return false if interrupted before the update
+	 */
+	public boolean step(long timeoutNanos) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		synchronized (this) {
+			while (!isReadyForUpdate()) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0)
+					break;
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		updateWorld();
+		return true;
+	}
+
+	/**
+	 * Called by a robot when it has chosen its action or finished.
+	 */
+	synchronized void robotReady() {
+		notifyAll();
 	}
 
 	public void loadRobotProgram(int id, File code) {
@@ -50,36 +330,147 @@ public class World {
 		if (prog != null) {
 			System.out.println("Robot " + id + " now has program: ");
 			System.out.println(prog);
-			robots[id].setProgram(prog);
+			setRobotProgram(id, prog, hash(code));
 		}
 	}
 
+	/**
+	 * Gives a robot a program that has already been parsed, so that many
+	 * worlds can share one parse.
+	 *
+	 * @param hash
+	 *            identifies the program's source in recordings
+	 */
+	public void setRobotProgram(int id, RobotProgramNode prog, long hash) {
+		if (programs[id] == prog && programHashes[id] == hash)
+			return;
+		programs = programs.clone();
+		programs[id] = prog;
+		programHashes = programHashes.clone();
+		programHashes[id] = hash;
+		robots[id].setProgram(prog);
+	}
+
+	/**
+	 * Limits the work the robot's program may do. Call before start.
+	 */
+	public void setRobotBudget(int id, RobotBudget budget) {
+		robots[id].setBudget(budget);
+	}
+
 	public void start() {
-		// add some initial fuel
-		if (availableFuel.isEmpty()) {
+		// add some initial fuel, unless this is a fork carrying on a match
+		if (availableFuel.isEmpty() && scenario == null && ticks == 0) {
 			addFuel(true);
 			addFuel(true);
 		}
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					robots[1].run();
-				} catch (RobotInterruptedException e) {
-				}
-				robots[1].setFinished(true);
-			}
-		}).start();
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					robots[2].run();
-				} catch (RobotInterruptedException e) {
+		if (recorder != null)
+			recorder.recordTick(this);
+		if (snapshots)
+			snapshot = takeSnapshot(ticks, false);
+		MatchStartEvent event = new MatchStartEvent();
+		if (event.shouldCommit()) {
+			event.seed = seed;
+			event.size = size;
+			event.barrels = availableFuel.size();
+			event.redProgram = programHashes[1];
+			event.blueProgram = programHashes[2];
+			event.commit();
+		}
+		EngineMetrics.matchStarted();
+		synchronized (this) {
+			match = new MatchEvent();
+			match.begin();
+		}
+		final CountDownLatch latch = new CountDownLatch(2);
+		running = latch;
+		for (int i = 1; i <= 2; i++) {
+			final int id = i;
+			ROBOT_THREADS.execute(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (threads) {
+						threads[id] = Thread.currentThread();
+					}
+					try {
+						robots[id].run();
+						robots[id].setFinished(true);
+					} catch (RobotInterruptedException e) {
+						robots[id].setFinished(true);
+					} finally {
+						synchronized (threads) {
+							threads[id] = null;
+						}
+						latch.countDown();
+					}
 				}
-				robots[2].setFinished(true);
-			}
-		}).start();
+			});
+		}
+	}
+
+	/**
+	 * Has the world take a snapshot as the match starts and at every update,
+	 * for getSnapshot. Call before start.
+	 */
+	public void setSnapshots(boolean on) {
+		snapshots = on;
+		// a fork needs what the programs read to bring them back
+		for (int id = 1; id <= 2; id++) {
+			robots[id].setLogging(on);
+		}
+	}
+
+	/**
+	 * @return the state of the match as of the most recent update, or null if
+	 *         snapshots are off
+	 */
+	public WorldSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Called by updateWorld with the robots waiting for their actions to be
+	 * applied, so the state they are moving to is the state at the end of the
+	 * tick. The previous snapshot's barrels and robot states are shared where
+	 * they have not changed.
+	 */
+	private WorldSnapshot takeSnapshot(int tick, boolean targets) {
+		WorldSnapshot last = snapshot;
+		Cell[] barrels;
+		if (last != null && last.barrels.length == availableFuel.size() && containsAll(last.barrels))
+			barrels = last.barrels;
+		else
+			barrels = availableFuel.toArray(new Cell[0]);
+		RobotState[] states = new RobotState[3];
+		for (int id = 1; id <= 2; id++) {
+			RobotState state = new RobotState();
+			if (targets)
+				robots[id].getTarget(state);
+			else
+				robots[id].getState(state);
+			states[id] = (last != null && state.equals(last.robots[id])) ? last.robots[id] : state;
+		}
+		if (last != null && states[1] == last.robots[1] && states[2] == last.robots[2])
+			states = last.robots;
+		ProgramPosition[] positions = new ProgramPosition[3];
+		for (int id = 1; id <= 2; id++) {
+			// a robot still choosing its action is where it was at its last
+			// one, which the last snapshot has
+			positions[id] = (last == null || robots[id].isActionPending()) ? robots[id].getPosition()
+					: last.positions[id];
+		}
+		if (last != null && positions[1] == last.positions[1] && positions[2] == last.positions[2])
+			positions = last.positions;
+		return new WorldSnapshot(size, tick, seed, rand.state, scenario, nextSpawn, barrels, states, positions,
+				programs, programHashes);
+	}
+
+	private boolean containsAll(Cell[] barrels) {
+		for (Cell barrel : barrels) {
+			if (!availableFuel.contains(barrel))
+				return false;
+		}
+		return true;
 	}
 
 	public Robot getRobot(int id) {
@@ -98,21 +489,67 @@ public class World {
 		return null;
 	}
 
+	/**
+	 * 64 bit FNV-1a hash of a file's contents.
+	 */
+	static long hash(File file) {
+		long h = 0xcbf29ce484222325L;
+		try {
+			for (byte b : Files.readAllBytes(file.toPath())) {
+				h ^= b & 0xff;
+				h *= 0x100000001b3L;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return h;
+	}
+
 	private void addFuel(boolean definitely) {
 		if (definitely || rand.nextDouble() < 0.2) {
-			int x = rand.nextInt(12);
-			int y = rand.nextInt(12);
-			Point fuel = new Point(x, y);
+			int x = rand.nextInt(size);
+			int y = rand.nextInt(size);
+			Cell fuel = new Cell(x, y);
 			availableFuel.add(fuel);
 		}
 	}
 	
+	/**
+	 * The same numbers as java.util.Random, from a seed that can be read and
+	 * set, so that a snapshot can carry on the sequence where it was taken.
+	 */
+	private static class WorldRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL, MASK = (1L << 48) - 1;
+
+		long state;
+
+		WorldRandom(long seed) {
+			super(seed);
+		}
+
+		@Override
+		public synchronized void setSeed(long seed) {
+			state = (seed ^ MULTIPLIER) & MASK;
+		}
+
+		@Override
+		protected int next(int bits) {
+			state = (state * MULTIPLIER + ADDEND) & MASK;
+			return (int) (state >>> (48 - bits));
+		}
+	}
+
 	public static class RoboGamePrinter extends World {
 		public RoboGamePrinter() {
-			super();
+			this(SIZE);
+		}
+
+		public RoboGamePrinter(int size) {
+			super(size);
 			// we remake the robots to have noWait set to true, this makes the program run without the timer.
 			// the blue robot is never used, but the red robot does call some methods on it so we can't make it null.
-			this.robots = new Robot[] { null, new Robot(this, 0, 0, "red", true), new Robot(this, SIZE - 1, SIZE - 1, "blue", true) };
+			this.robots = new Robot[] { null, new Robot(this, 0, 0, "red", true), new Robot(this, size - 1, size - 1, "blue", true) };
 		}
 
 		public static void main(String[] args) throws IOException {
@@ -122,10 +559,18 @@ public class World {
 				System.out.println("Use the main function in RoboGame.java to run the assignment.");
 			}
 			
-			RoboGamePrinter rgp = new RoboGamePrinter();
-			
+			Trace.enableAll();
+
 			// load the program.
 			RobotProgramNode prog = Parser.parseFile(new File(args[0]));
+
+			// a scenario corpus runs the program once per episode, in one go.
+			if (args[1].endsWith(".scn")) {
+				printCorpus(prog, Paths.get(args[1]));
+				return;
+			}
+
+			RoboGamePrinter rgp = new RoboGamePrinter();
 			rgp.robots[1].setProgram(prog);
 			
 			// load fuel placement from file.
@@ -134,11 +579,27 @@ public class World {
 				String[] coords = line.split("\\s+");
 				int x = Integer.parseInt(coords[0]);
 				int y = Integer.parseInt(coords[1]);
-				rgp.availableFuel.add(new Point(x, y));
+				rgp.availableFuel.add(new Cell(x, y));
 			}
 			
 			// run the robot.
 			rgp.robots[1].run();
 		}
+
+		private static void printCorpus(RobotProgramNode prog, Path file) throws IOException {
+			ScenarioCorpus corpus = new ScenarioCorpus(file);
+			Scenario scenario = new Scenario();
+			try {
+				while (corpus.next(scenario)) {
+					Trace.log(Trace.Category.STATE, "episode " + scenario.getIndex());
+					RoboGamePrinter rgp = new RoboGamePrinter(corpus.getArenaSize());
+					rgp.setScenario(scenario);
+					rgp.robots[1].setProgram(prog);
+					rgp.robots[1].run();
+				}
+			} finally {
+				corpus.close();
+			}
+		}
 	}
 }
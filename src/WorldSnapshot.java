@@ -0,0 +1,91 @@
+/**
+ * The state of a match between two ticks, which cannot change once taken.
+ * Any number of independent matches can be forked from a snapshot, each
+ * carrying on from where the snapshot was taken, for look-ahead and what-if
+ * analysis.
+ * <p>
+ * Snapshots are copy on write: World.takeSnapshot shares the barrels, robot
+ * states and program positions of the world's previous snapshot wherever
+ * they have not changed, and the programs, scenario and the values the
+ * programs have read are shared rather than copied, so taking one costs
+ * little more than the state that changed.
+ * <p>
+ * Where a program was in its execution lives on its robot thread's stack and
+ * cannot be copied. Instead, with snapshots on, each robot keeps the values
+ * its program reads from its sensors, and a fork runs the program from the
+ * top against them, passing over the actions it had already taken, which
+ * brings the program, its variables and its shield back to where they
+ * were. Forking is cheap, but a fork's first tick does again all the
+ * interpreting of the match so far, and the values kept grow with the match
+ * for as long as snapshots are on. The benchmark EngineBenchmarks.fork
+ * measures how that grows with the ticks played.
+ * <p>
+ * A robot that had not chosen its action when the snapshot was taken
+ * carries on from its last action. Forks play out as the match would have,
+ * and the same way as each other, as long as each robot chose its action
+ * within the tick timeout every tick up to the snapshot, and goes on doing
+ * so in the fork.
+ */
+public final class WorldSnapshot {
+
+	final int size, tick;
+	final long seed, randState;
+	final Scenario scenario;
+	final int nextSpawn;
+	final Cell[] barrels;
+	// indexed by robot id, as in World
+	final RobotState[] robots;
+	final ProgramPosition[] positions;
+	final RobotProgramNode[] programs;
+	final long[] programHashes;
+
+	WorldSnapshot(int size, int tick, long seed, long randState, Scenario scenario, int nextSpawn, Cell[] barrels,
+			RobotState[] robots, ProgramPosition[] positions, RobotProgramNode[] programs, long[] programHashes) {
+		this.size = size;
+		this.tick = tick;
+		this.seed = seed;
+		this.randState = randState;
+		this.scenario = scenario;
+		this.nextSpawn = nextSpawn;
+		this.barrels = barrels;
+		this.robots = robots;
+		this.positions = positions;
+		this.programs = programs;
+		this.programHashes = programHashes;
+	}
+
+	/**
+	 * @return a new world in the state of the snapshot, ready to be started
+	 */
+	public World fork() {
+		return new World(this);
+	}
+
+	public int getTick() {
+		return tick;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getBarrelCount() {
+		return barrels.length;
+	}
+
+	public Cell getBarrel(int n) {
+		return barrels[n];
+	}
+
+	/**
+	 * Copies the state of the given robot into the given object.
+	 */
+	public void getRobotState(int id, RobotState state) {
+		state.set(robots[id]);
+	}
+
+	@Override
+	public String toString() {
+		return "tick " + tick + ": red " + robots[1] + ", blue " + robots[2] + ", " + barrels.length + " barrels";
+	}
+}
@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommonSubexpressionsTest {
+
+	// s2_full can go round its loop without acting, which would otherwise
+	// hold up the step until it timed out
+	@Before
+	public void waitWhenSpinning() {
+		Robot.setSpinPolicy(Robot.SpinPolicy.WAIT);
+	}
+
+	@After
+	public void restoreSpinPolicy() {
+		Robot.setSpinPolicy(Robot.SpinPolicy.REPORT);
+	}
+
+	/**
+	 * Sharing repeated subexpressions changes how often a program reads its
+	 * sensors, not what it does, so each robot goes through the same states.
+	 */
+	@Test
+	public void sharedProgramsPlayAsWritten() {
+		File blue = new File("data/s1_full.prog");
+		for (String name : new String[] { "s2_full", "s2_simple" }) {
+			File red = new File("data/" + name + ".prog");
+			RobotProgramNode shared = Parser.parseFile(red);
+			assertTrue(name + " should have shared subexpressions", CommonSubexpressions.eliminate(shared) > 0);
+			for (long seed = 0; seed < 8; seed++) {
+				assertEquals(name + " seed " + seed, play(Parser.parseFile(red), Parser.parseFile(blue), seed),
+						play(shared, Parser.parseFile(blue), seed));
+			}
+		}
+	}
+
+	/**
+	 * @return the states both robots recorded, one for each tick played. A
+	 *         waiting robot may record more between the last tick and the
+	 *         reset, and how many varies from run to run.
+	 */
+	private List<String> play(RobotProgramNode red, RobotProgramNode blue, long seed) {
+		World world = new World(World.SIZE);
+		world.setRobotProgram(1, red, 1);
+		world.setRobotProgram(2, blue, 2);
+		world.setSeed(seed);
+		world.start();
+		try {
+			while (!world.getRobot(1).isDead() && !world.getRobot(2).isDead() && world.getTicks() < 500) {
+				world.step(TimeUnit.SECONDS.toNanos(1));
+			}
+			// a robot still to record the last tick would otherwise record the
+			// fuel that reset takes away
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+			while (!(world.getRobot(1).isActionPending() && world.getRobot(2).isActionPending())
+					&& System.nanoTime() < deadline) {
+				Thread.yield();
+			}
+		} finally {
+			world.reset();
+		}
+		List<String> states = new ArrayList<String>();
+		for (int id = 1; id <= 2; id++) {
+			StateTrace history = world.getRobot(id).getHistory();
+			for (int i = 0; i < Math.min(history.size(), world.getTicks()); i++) {
+				states.add(id + " " + history.format(i));
+			}
+		}
+		return states;
+	}
+}
@@ -0,0 +1,57 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PolicyCompilerTest {
+
+	/**
+	 * A program compiled to a table takes the same actions as the program it
+	 * was compiled from, so a match goes the same way either way.
+	 */
+	@Test
+	public void compiledProgramPlaysAsInterpreted() {
+		File red = new File("data/s2_simple.prog"), blue = new File("data/s1_full.prog");
+		RobotProgramNode compiled = PolicyCompiler.compile(Parser.parseFile(red));
+		assertNotSame("s2_simple should compile", Parser.parseFile(red).getClass(), compiled.getClass());
+		for (long seed = 0; seed < 8; seed++) {
+			assertEquals("seed " + seed, play(Parser.parseFile(red), Parser.parseFile(blue), seed),
+					play(compiled, Parser.parseFile(blue), seed));
+		}
+	}
+
+	/**
+	 * @return where each robot was and the fuel it had after each tick. The
+	 *         histories are not compared: how far a waiting robot gets between
+	 *         the last tick and the reset varies from run to run.
+	 */
+	private List<String> play(RobotProgramNode red, RobotProgramNode blue, long seed) {
+		World world = new World(World.SIZE);
+		world.setRobotProgram(1, red, 1);
+		world.setRobotProgram(2, blue, 2);
+		world.setSeed(seed);
+		List<String> ticks = new ArrayList<String>();
+		RobotState state = new RobotState();
+		world.start();
+		try {
+			while (!world.getRobot(1).isDead() && !world.getRobot(2).isDead() && world.getTicks() < 500) {
+				world.step(TimeUnit.SECONDS.toNanos(1));
+				StringBuilder b = new StringBuilder().append(world.getTicks());
+				for (int id = 1; id <= 2; id++) {
+					world.getRobot(id).getState(state);
+					b.append(' ').append(state.x).append(',').append(state.y).append(',')
+							.append(state.getDirection()).append(',').append(state.fuel);
+				}
+				ticks.add(b.toString());
+			}
+		} finally {
+			world.reset();
+		}
+		return ticks;
+	}
+}
@@ -0,0 +1,56 @@
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RobotBatchTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * A move of several steps that runs into the wall part way wakes the
+	 * program to see for itself; the state must still be recorded once a
+	 * tick.
+	 */
+	@Test
+	public void blockedBatchRecordsEachStateOnce() throws IOException {
+		RobotProgramNode prog = parse("while(gt(fuelLeft, 0)){ move(3); turnL; turnL; move(5); turnL; turnL; }");
+		for (long seed = 0; seed < 4; seed++) {
+			World world = new World(12);
+			world.setRobotProgram(1, prog, 1);
+			world.setRobotProgram(2, prog, 1);
+			world.setSeed(seed);
+			world.start();
+			try {
+				while (!world.getRobot(1).isDead() && !world.getRobot(2).isDead() && world.getTicks() < 60) {
+					world.step(TimeUnit.SECONDS.toNanos(1));
+				}
+			} finally {
+				world.reset();
+			}
+			for (int id = 1; id <= 2; id++) {
+				StateTrace history = world.getRobot(id).getHistory();
+				// every action here costs fuel, so no two states in a row are
+				// the same
+				for (int i = 1; i < history.size(); i++) {
+					assertFalse("seed " + seed + ", robot " + id + " recorded twice: " + history.format(i),
+							history.format(i).equals(history.format(i - 1)));
+				}
+			}
+		}
+	}
+
+	private RobotProgramNode parse(String source) throws IOException {
+		File f = folder.newFile("test.prog");
+		Files.write(f.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		return Parser.parseFile(f);
+	}
+}
@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorldSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * A fork's programs carry on with the shield and place in their loops
+	 * that they had at the snapshot, so the fork plays out as the rest of
+	 * the match did, however often it is taken.
+	 */
+	@Test
+	public void forksCarryOnAsTheMatchDid() throws IOException {
+		RobotProgramNode red = parse("red.prog", "while(gt(fuelLeft, 0)){"
+				+ " if(lt(wallDist, 1)){ turnL; } elif(gt(wallDist, 2)){ move(3); } else{ move; }"
+				+ " if(and(eq(barrelFB, 0), eq(barrelLR, 0))){ takeFuel; }"
+				+ " if(lt(wallDist, 2)){ shieldOn; } else{ shieldOff; } }");
+		RobotProgramNode blue = parse("blue.prog", "while(gt(fuelLeft, 0)){"
+				+ " if(lt(wallDist, 1)){ turnR; } else{ move(wallDist); }"
+				+ " if(and(eq(barrelFB, 0), eq(barrelLR, 0))){ takeFuel; } }");
+		for (int at = 3; at <= 13; at += 5) {
+			World world = new World(12);
+			world.setRobotProgram(1, red, 1);
+			world.setRobotProgram(2, blue, 2);
+			world.setSeed(0);
+			world.setSnapshots(true);
+			WorldSnapshot snapshot;
+			List<String> match;
+			world.start();
+			try {
+				play(world, at);
+				snapshot = world.getSnapshot();
+				match = play(world, 60);
+			} finally {
+				world.reset();
+			}
+			for (int i = 0; i < 2; i++) {
+				World fork = snapshot.fork();
+				fork.setSnapshots(true);
+				fork.start();
+				try {
+					assertEquals("fork " + i + " of " + snapshot, match, play(fork, 60));
+				} finally {
+					fork.reset();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the state at the end of each tick, up to the given one or the
+	 *         end of the match. It is read from the snapshot the world took
+	 *         as the tick ended, while both robots waited for their actions:
+	 *         read afterwards, the shield and barrels are as far as the
+	 *         programs have since got, which varies.
+	 */
+	private List<String> play(World world, int until) {
+		List<String> ticks = new ArrayList<String>();
+		RobotState state = new RobotState();
+		while (!world.getRobot(1).isDead() && !world.getRobot(2).isDead() && world.getTicks() < until) {
+			world.step(TimeUnit.SECONDS.toNanos(1));
+			WorldSnapshot tick = world.getSnapshot();
+			StringBuilder b = new StringBuilder().append(tick.getTick());
+			for (int id = 1; id <= 2; id++) {
+				tick.getRobotState(id, state);
+				b.append(' ').append(state);
+			}
+			List<String> barrels = new ArrayList<String>();
+			for (int n = 0; n < tick.getBarrelCount(); n++) {
+				barrels.add(tick.getBarrel(n).toString());
+			}
+			Collections.sort(barrels);
+			ticks.add(b.append(" barrels ").append(barrels).toString());
+		}
+		return ticks;
+	}
+
+	private RobotProgramNode parse(String name, String source) throws IOException {
+		File f = folder.newFile(name);
+		Files.write(f.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		return Parser.parseFile(f);
+	}
+}
@@ -0,0 +1,104 @@
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * A window showing many live matches at once, for keeping an eye on a
+ * tournament. All the arenas share the FrameScheduler's thread and the
+ * SpriteCache, and each only repaints when it is on screen and a tick has
+ * passed.
+ */
+@SuppressWarnings("serial")
+public class Dashboard extends JFrame {
+
+	private static final int ARENA_VIEW_SIZE = 180;
+	private static final int MAX_ARENAS = 64;
+
+	private final List<WorldComponent> arenas = new ArrayList<WorldComponent>();
+
+	/**
+	 * @param pairings
+	 *            the red and blue program of each match to show
+	 */
+	public Dashboard(List<File[]> pairings) {
+		super("Robots - " + pairings.size() + " matches");
+		setDefaultCloseOperation(EXIT_ON_CLOSE);
+
+		int columns = (int) Math.ceil(Math.sqrt(pairings.size()));
+		JPanel grid = new JPanel(new GridLayout(0, columns, 4, 4));
+		for (File[] pair : pairings) {
+			WorldComponent arena = new WorldComponent(World.SIZE, ARENA_VIEW_SIZE);
+			arena.setCompact(true);
+			arena.loadRobotProgram(1, pair[0]);
+			arena.loadRobotProgram(2, pair[1]);
+			arenas.add(arena);
+
+			JPanel cell = new JPanel(new BorderLayout());
+			cell.setBorder(BorderFactory.createEtchedBorder());
+			cell.add(new JLabel(pair[0].getName() + " vs " + pair[1].getName()), BorderLayout.NORTH);
+			cell.add(arena, BorderLayout.CENTER);
+			grid.add(cell);
+		}
+		add(new JScrollPane(grid), BorderLayout.CENTER);
+		pack();
+		setLocationRelativeTo(null);
+		setVisible(true);
+	}
+
+	public void start() {
+		for (WorldComponent arena : arenas) {
+			arena.start();
+		}
+	}
+
+	/**
+	 * Arguments are [-n count] red.prog blue.prog [red.prog blue.prog ...].
+	 * The pairings are repeated until there are count matches, by default one
+	 * per pairing.
+	 */
+	public static void main(String[] args) {
+		int count = -1;
+		List<File[]> pairs = new ArrayList<File[]>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i + 1 < args.length) {
+				count = Integer.parseInt(args[++i]);
+			} else if (i + 1 < args.length) {
+				pairs.add(new File[] { new File(args[i]), new File(args[++i]) });
+			} else {
+				System.out.println("Program " + args[i] + " has no opponent");
+				return;
+			}
+		}
+		if (pairs.isEmpty()) {
+			System.out.println("Usage: Dashboard [-n count] red.prog blue.prog [red.prog blue.prog ...]");
+			return;
+		}
+		if (count < 0)
+			count = pairs.size();
+		count = Math.min(count, MAX_ARENAS);
+
+		Trace.disableAll();
+		// so that one program going round without acting cannot slow the
+		// other matches down
+		Robot.setSpinPolicy(Robot.SpinPolicy.WAIT);
+		final List<File[]> pairings = new ArrayList<File[]>();
+		for (int i = 0; i < count; i++) {
+			pairings.add(pairs.get(i % pairs.size()));
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				new Dashboard(pairings).start();
+			}
+		});
+	}
+}
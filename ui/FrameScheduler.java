@@ -0,0 +1,55 @@
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Drives the animation of every running WorldComponent from a single timer
+ * thread, so that a window full of arenas costs one thread rather than one
+ * per arena. Each frame, every registered component advances its world clock
+ * and decides for itself whether it needs repainting.
+ */
+public class FrameScheduler {
+
+	public static final int FRAME_DELAY = 20;
+
+	private static final FrameScheduler shared = new FrameScheduler();
+
+	private final CopyOnWriteArrayList<WorldComponent> components = new CopyOnWriteArrayList<WorldComponent>();
+	private Timer timer;
+
+	public static FrameScheduler get() {
+		return shared;
+	}
+
+	public synchronized void add(WorldComponent comp) {
+		components.addIfAbsent(comp);
+		if (timer == null) {
+			timer = new Timer("frames", true);
+			timer.scheduleAtFixedRate(new FrameTask(), 0, FRAME_DELAY);
+		}
+	}
+
+	public synchronized void remove(WorldComponent comp) {
+		components.remove(comp);
+		if (components.isEmpty() && timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+	private class FrameTask extends TimerTask {
+
+		@Override
+		public void run() {
+			for (WorldComponent comp : components) {
+				try {
+					comp.nextFrame();
+				} catch (RuntimeException e) {
+					// one broken arena must not stop all the others
+					e.printStackTrace();
+					remove(comp);
+				}
+			}
+		}
+	}
+}
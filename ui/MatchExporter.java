@@ -0,0 +1,322 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Turns a recorded match into a PNG sequence or an animated GIF without a
+ * display. Frames are drawn by the same code as the GUI, using a
+ * WorldComponent and ReplayWorld per thread, and the threads split the match
+ * between them.
+ */
+public class MatchExporter {
+
+	private static final int BATCH_PER_THREAD = 8;
+
+	private final Path recordingFile;
+	private final int viewSize, framesPerTick, threads, lastTick;
+	private int fromTick, toTick;
+
+	private final ThreadLocal<Renderer> renderers = new ThreadLocal<Renderer>();
+	private final List<Renderer> allRenderers = new ArrayList<Renderer>();
+
+	/**
+	 * @param framesPerTick
+	 *            how many frames to draw for each tick, interpolating between
+	 *            them like the GUI does
+	 */
+	public MatchExporter(Path recordingFile, int viewSize, int framesPerTick, int threads) throws IOException {
+		this.recordingFile = recordingFile;
+		this.viewSize = viewSize;
+		this.framesPerTick = framesPerTick;
+		this.threads = threads;
+		MatchRecording recording = new MatchRecording(recordingFile);
+		lastTick = toTick = recording.getTickCount() - 1;
+		recording.close();
+		if (lastTick < 0)
+			throw new IllegalArgumentException(recordingFile + " has no ticks to export");
+	}
+
+	/**
+	 * Limits the export to the ticks from..to inclusive, of those recorded.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if to is before from, or no recorded tick is in the range
+	 */
+	public void setRange(int from, int to) {
+		int first = Math.max(0, from), last = Math.min(lastTick, to);
+		if (last < first)
+			throw new IllegalArgumentException("No ticks to export in " + from + ".." + to + " of 0.." + lastTick);
+		fromTick = first;
+		toTick = last;
+	}
+
+	public int getFrameCount() {
+		// the last tick has nothing to move towards, so it gets one frame
+		return (toTick - fromTick) * framesPerTick + 1;
+	}
+
+	/**
+	 * Writes frame_000000.png onwards into the given directory.
+	 */
+	public void exportPngs(final Path dir) throws IOException {
+		Files.createDirectories(dir);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			int frames = getFrameCount();
+			int chunk = (frames + threads - 1) / threads;
+			List<Future<Void>> done = new ArrayList<Future<Void>>();
+			for (int start = 0; start < frames; start += chunk) {
+				final int from = start, to = Math.min(frames, start + chunk);
+				done.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						Renderer r = renderer();
+						for (int f = from; f < to; f++) {
+							File file = dir.resolve(String.format("frame_%06d.png", f)).toFile();
+							ImageIO.write(r.render(f), "png", file);
+						}
+						return null;
+					}
+				}));
+			}
+			waitFor(done);
+		} finally {
+			shutdown(pool);
+		}
+	}
+
+	/**
+	 * Writes an animated GIF that loops forever.
+	 *
+	 * @param frameDelay
+	 *            time each frame is shown, in milliseconds
+	 */
+	public void exportGif(Path file, int frameDelay) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile());
+		try {
+			writer.setOutput(out);
+			writer.prepareWriteSequence(null);
+			int frames = getFrameCount();
+			int batch = threads * BATCH_PER_THREAD;
+			// frames are drawn in parallel a batch at a time, then written in
+			// order, so only one batch is ever held in memory
+			for (int start = 0; start < frames; start += batch) {
+				List<Future<BufferedImage>> images = new ArrayList<Future<BufferedImage>>();
+				for (int f = start; f < Math.min(frames, start + batch); f++) {
+					final int frame = f;
+					images.add(pool.submit(new Callable<BufferedImage>() {
+						@Override
+						public BufferedImage call() throws IOException {
+							return toIndexed(renderer().render(frame));
+						}
+					}));
+				}
+				for (int i = 0; i < images.size(); i++) {
+					BufferedImage image = get(images.get(i));
+					IIOMetadata meta = gifMetadata(writer, image, frameDelay, start + i == 0);
+					writer.writeToSequence(new IIOImage(image, null, meta), null);
+				}
+			}
+			writer.endWriteSequence();
+		} finally {
+			out.close();
+			writer.dispose();
+			shutdown(pool);
+		}
+	}
+
+	private Renderer renderer() throws IOException {
+		Renderer r = renderers.get();
+		if (r == null) {
+			r = new Renderer();
+			renderers.set(r);
+			synchronized (allRenderers) {
+				allRenderers.add(r);
+			}
+		}
+		return r;
+	}
+
+	private void shutdown(ExecutorService pool) throws IOException {
+		pool.shutdown();
+		synchronized (allRenderers) {
+			for (Renderer r : allRenderers) {
+				r.world.getRecording().close();
+			}
+			allRenderers.clear();
+		}
+	}
+
+	private static void waitFor(List<Future<Void>> tasks) throws IOException {
+		for (Future<Void> f : tasks) {
+			get(f);
+		}
+	}
+
+	private static <T> T get(Future<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("export interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * A 6x6x6 colour cube plus greys, fixed so that each thread can reduce its
+	 * own frames to 256 colours before they reach the GIF writer.
+	 */
+	private static final IndexColorModel PALETTE;
+
+	static {
+		byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+		int i = 0;
+		for (int red = 0; red < 6; red++)
+			for (int green = 0; green < 6; green++)
+				for (int blue = 0; blue < 6; blue++, i++) {
+					r[i] = (byte) (red * 51);
+					g[i] = (byte) (green * 51);
+					b[i] = (byte) (blue * 51);
+				}
+		for (int grey = 0; i < 256; i++, grey++) {
+			int v = 5 + grey * 250 / 39;
+			r[i] = g[i] = b[i] = (byte) v;
+		}
+		PALETTE = new IndexColorModel(8, 256, r, g, b);
+	}
+
+	private static BufferedImage toIndexed(BufferedImage rgb) {
+		BufferedImage indexed = new BufferedImage(rgb.getWidth(), rgb.getHeight(), BufferedImage.TYPE_BYTE_INDEXED,
+				PALETTE);
+		Graphics2D g = indexed.createGraphics();
+		g.drawImage(rgb, 0, 0, null);
+		g.dispose();
+		return indexed;
+	}
+
+	private static IIOMetadata gifMetadata(ImageWriter writer, BufferedImage image, int delay, boolean first)
+			throws IOException {
+		IIOMetadata meta = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+		String format = meta.getNativeMetadataFormatName();
+		IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree(format);
+
+		IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+		control.setAttribute("disposalMethod", "none");
+		control.setAttribute("userInputFlag", "FALSE");
+		control.setAttribute("transparentColorFlag", "FALSE");
+		control.setAttribute("delayTime", Integer.toString(Math.max(1, delay / 10)));
+		control.setAttribute("transparentColorIndex", "0");
+		root.appendChild(control);
+
+		if (first) {
+			IIOMetadataNode apps = new IIOMetadataNode("ApplicationExtensions");
+			IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+			loop.setAttribute("applicationID", "NETSCAPE");
+			loop.setAttribute("authenticationCode", "2.0");
+			loop.setUserObject(new byte[] { 1, 0, 0 });
+			apps.appendChild(loop);
+			root.appendChild(apps);
+		}
+		meta.setFromTree(format, root);
+		return meta;
+	}
+
+	/**
+	 * Everything one thread needs to draw frames. Threads work through runs of
+	 * consecutive frames, so the recording is mostly read forwards.
+	 */
+	private class Renderer {
+		final ReplayWorld world;
+		final WorldComponent view;
+		final BufferedImage image = new BufferedImage(viewSize, viewSize, BufferedImage.TYPE_INT_RGB);
+
+		Renderer() throws IOException {
+			world = new ReplayWorld(new MatchRecording(recordingFile));
+			view = new WorldComponent(world, viewSize);
+		}
+
+		/**
+		 * @return the frame, in an image that is reused for the next one
+		 */
+		BufferedImage render(int frame) throws IOException {
+			world.showTick(fromTick + frame / framesPerTick);
+			double time = (double) (frame % framesPerTick) / framesPerTick;
+			Graphics2D g = image.createGraphics();
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, viewSize, viewSize);
+			view.paintFrame(g, time);
+			g.dispose();
+			return image;
+		}
+	}
+
+	/**
+	 * Arguments are recording (out.gif | outDir) [-size pixels] [-frames
+	 * perTick] [-delay ms] [-threads n] [-from tick] [-to tick]. A name ending
+	 * in .gif gives an animated GIF, anything else a directory of PNGs.
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 2) {
+			System.out.println("Usage: MatchExporter recording (out.gif | outDir) [-size pixels] [-frames perTick]"
+					+ " [-delay ms] [-threads n] [-from tick] [-to tick]");
+			return;
+		}
+		int size = 600, frames = 4, delay = 40, threads = Runtime.getRuntime().availableProcessors();
+		int from = 0, to = Integer.MAX_VALUE;
+		for (int i = 2; i + 1 < args.length; i += 2) {
+			int value = Integer.parseInt(args[i + 1]);
+			if (args[i].equals("-size"))
+				size = value;
+			else if (args[i].equals("-frames"))
+				frames = value;
+			else if (args[i].equals("-delay"))
+				delay = value;
+			else if (args[i].equals("-threads"))
+				threads = value;
+			else if (args[i].equals("-from"))
+				from = value;
+			else if (args[i].equals("-to"))
+				to = value;
+			else
+				System.out.println("Ignoring unknown option " + args[i]);
+		}
+
+		MatchExporter exporter = new MatchExporter(Paths.get(args[0]), size, frames, threads);
+		exporter.setRange(from, to);
+		long start = System.nanoTime();
+		if (args[1].endsWith(".gif")) {
+			exporter.exportGif(Paths.get(args[1]), delay);
+		} else {
+			exporter.exportPngs(Paths.get(args[1]));
+		}
+		System.out.printf("Exported %d frames in %.1f s%n", exporter.getFrameCount(), (System.nanoTime() - start) / 1e9);
+	}
+}
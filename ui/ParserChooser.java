@@ -0,0 +1,25 @@
+import javax.swing.JFileChooser;
+
+/**
+ * For testing the parser on files picked from a dialog, one after another,
+ * until the dialog is cancelled.
+ */
+public class ParserChooser {
+
+  public static void main(String[] args) {
+    while (true) {
+      JFileChooser chooser = new JFileChooser(".");// System.getProperty("user.dir"));
+      int res = chooser.showOpenDialog(null);
+      if (res != JFileChooser.APPROVE_OPTION) {
+        break;
+      }
+      RobotProgramNode prog = Parser.parseFile(chooser.getSelectedFile());
+      System.out.println("Parsing completed");
+      if (prog != null) {
+        System.out.println("Program: \n" + prog);
+      }
+      System.out.println("=================");
+    }
+    System.out.println("Done");
+  }
+}
@@ -0,0 +1,337 @@
+import java.awt.BorderLayout;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JSlider;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+@SuppressWarnings("serial")
+public class RoboGame extends JFrame {
+
+	private WorldComponent worldComp;
+	private File code1, code2;
+	private JSlider replaySlider = new JSlider(0, 0, 0);
+
+	public RoboGame() {
+		this(World.SIZE);
+	}
+
+	public RoboGame(int arenaSize) {
+		super("Robots");
+		worldComp = new WorldComponent(arenaSize);
+		setDefaultCloseOperation(EXIT_ON_CLOSE);
+		setResizable(false);
+
+		add(worldComp, BorderLayout.CENTER);
+		add(replaySlider, BorderLayout.SOUTH);
+		replaySlider.setVisible(false);
+		replaySlider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				worldComp.setReplayTick(replaySlider.getValue());
+			}
+		});
+		worldComp.addPropertyChangeListener("replayTick", new PropertyChangeListener() {
+			@Override
+			public void propertyChange(final PropertyChangeEvent e) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						replaySlider.setValue((Integer) e.getNewValue());
+					}
+				});
+			}
+		});
+
+		createMenu();
+		pack();
+
+		setLocationRelativeTo(null);
+
+		setVisible(true);
+	}
+
+	private void createMenu() {
+		JMenuBar menu = new JMenuBar();
+
+		final JMenu loadMenu = new JMenu("Load Program");
+		final JMenu debugMenu = new JMenu("Debug ");
+		final JMenu speedMenu = new JMenu("Speed");
+		final JMenu replayMenu = new JMenu("Replay");
+		final JMenuItem load1 = new JMenuItem("Robot 1");
+		final JMenuItem load2 = new JMenuItem("Robot 2");
+		final JMenuItem start = new JMenuItem("Start");
+		final JMenuItem reset = new JMenuItem("Reset");
+		final JMenuItem debugOn = new JMenuItem("On");
+		final JMenuItem debugOff = new JMenuItem("Off");
+		JMenuItem quit = new JMenuItem("Quit");
+
+		menu.add(loadMenu);
+		loadMenu.add(load1);
+		loadMenu.add(load2);
+		menu.add(start);
+		menu.add(reset);
+		menu.add(debugMenu);
+		debugMenu.add(debugOn);
+		debugMenu.add(debugOff);
+		menu.add(speedMenu);
+		createSpeedMenu(speedMenu);
+		menu.add(replayMenu);
+		createReplayMenu(replayMenu, load1, load2, start);
+		menu.add(quit);
+		setJMenuBar(menu);
+
+		// Add listeners to menu items.
+
+		load1.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				code1 = getCodeFile();
+				if (code1 != null) {
+					worldComp.loadRobotProgram(1, code1);
+					worldComp.repaint();
+				}
+			}
+		});
+
+		load2.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				code2 = getCodeFile();
+				if (code2 != null) {
+					worldComp.loadRobotProgram(2, code2);
+					worldComp.repaint();
+				}
+			}
+		});
+
+		start.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				load1.setEnabled(false);
+				load2.setEnabled(false);
+				start.setEnabled(false);
+				worldComp.start();
+			}
+		});
+		reset.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				worldComp.reset();
+				if (code1 != null) {
+					worldComp.loadRobotProgram(1, code1);
+				}
+				if (code2 != null) {
+					worldComp.loadRobotProgram(2, code2);
+				}
+				worldComp.repaint();
+				replaySlider.setVisible(false);
+				pack();
+				load1.setEnabled(true);
+				load2.setEnabled(true);
+				start.setEnabled(true);
+			}
+		});
+
+		debugOn.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				Trace.setEnabled(Trace.Category.DEBUG, true);
+			}
+		});
+		debugOff.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				Trace.setEnabled(Trace.Category.DEBUG, false);
+			}
+		});
+
+		quit.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				System.exit(0);
+			}
+		});
+
+		/*
+		 * } catch (FileNotFoundException e) {e.printStackTrace();} JMenuItem
+		 * startSimple = new JMenuItem("Simple Interpreter"); JMenuItem
+		 * startIntermediate = new JMenuItem("Intermediate Interpreter");
+		 * JMenuItem startAdvanced = new JMenuItem("Advanced Interpreter");
+		 * start.add(startSimple); start.add(startIntermediate);
+		 * start.add(startAdvanced); startSimple.addActionListener(new
+		 * ActionListener() {@Override public void actionPerformed(ActionEvent
+		 * e) { load1.setEnabled(false); load2.setEnabled(false);
+		 * start.setEnabled(false); worldComp.start(World.INTERPRETER_SIMPLE); }
+		 * });
+		 * 
+		 * startIntermediate.addActionListener(new ActionListener() {@Override
+		 * public void actionPerformed(ActionEvent e) { load1.setEnabled(false);
+		 * load2.setEnabled(false); start.setEnabled(false);
+		 * worldComp.start(World.INTERPRETER_INTERMEDIATE); } });
+		 * startAdvanced.addActionListener(new ActionListener() {@Override
+		 * public void actionPerformed(ActionEvent e) { load1.setEnabled(false);
+		 * load2.setEnabled(false); start.setEnabled(false);
+		 * worldComp.start(World.INTERPRETER_ADVANCED); } });
+		 */
+	}
+
+	private void createSpeedMenu(JMenu speedMenu) {
+		ButtonGroup group = new ButtonGroup();
+		for (final double speed : WorldComponent.SPEEDS) {
+			String label = (speed == (int) speed) ? "" + (int) speed : "" + speed;
+			JMenuItem item = new JRadioButtonMenuItem(label + "x", speed == 1);
+			group.add(item);
+			speedMenu.add(item);
+			item.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					worldComp.setSpeed(speed);
+				}
+			});
+		}
+		speedMenu.addSeparator();
+		JMenuItem turbo = new JRadioButtonMenuItem("Turbo");
+		group.add(turbo);
+		speedMenu.add(turbo);
+		turbo.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				worldComp.setTurbo(true);
+			}
+		});
+	}
+
+	private void createReplayMenu(JMenu replayMenu, final JMenuItem load1, final JMenuItem load2,
+			final JMenuItem start) {
+		JMenuItem record = new JMenuItem("Record Next Match...");
+		JMenuItem open = new JMenuItem("Open Recording...");
+		JMenuItem pause = new JMenuItem("Pause/Play");
+		JMenuItem back = new JMenuItem("Step Back");
+		JMenuItem forward = new JMenuItem("Step Forward");
+		pause.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0));
+		back.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, 0));
+		forward.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0));
+		replayMenu.add(record);
+		replayMenu.add(open);
+		replayMenu.addSeparator();
+		replayMenu.add(pause);
+		replayMenu.add(back);
+		replayMenu.add(forward);
+
+		record.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser(".");
+				if (chooser.showSaveDialog(RoboGame.this) == JFileChooser.APPROVE_OPTION) {
+					worldComp.recordTo(chooser.getSelectedFile().toPath());
+				}
+			}
+		});
+		open.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				File file = getCodeFile();
+				if (file == null)
+					return;
+				try {
+					MatchRecording recording = new MatchRecording(file.toPath());
+					worldComp.playRecording(recording);
+					replaySlider.setMaximum(recording.getTickCount() - 1);
+					replaySlider.setValue(0);
+					replaySlider.setVisible(true);
+					pack();
+					load1.setEnabled(false);
+					load2.setEnabled(false);
+					start.setEnabled(false);
+				} catch (IOException ex) {
+					JOptionPane.showMessageDialog(RoboGame.this, "Could not open recording: " + ex.getMessage());
+				}
+			}
+		});
+		pause.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				worldComp.setPaused(!worldComp.isPaused());
+			}
+		});
+		back.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				worldComp.setPaused(true);
+				worldComp.setReplayTick(worldComp.getReplayTick() - 1);
+			}
+		});
+		forward.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				worldComp.setPaused(true);
+				worldComp.setReplayTick(worldComp.getReplayTick() + 1);
+			}
+		});
+	}
+
+	public File getCodeFile() {
+		JFileChooser chooser = new JFileChooser(".");// System.getProperty("user.dir"));
+		int res = chooser.showOpenDialog(this);
+		if (res == JFileChooser.APPROVE_OPTION) {
+			return chooser.getSelectedFile();
+		}
+		return null;
+	}
+
+	/**
+	 * This is the entry point into the program. An optional argument gives the
+	 * number of cells along each side of the arena.
+	 */
+	/**
+	 * Takes the arena size, if not the default, and -jmx on to publish the
+	 * engine metrics over JMX, as MatchRunner does.
+	 */
+	public static void main(String[] args) {
+		// the console is only for watching, so it may skip lines rather
+		// than hold up the robots
+		Trace.setSink(new AsyncTraceSink(System.out, AsyncTraceSink.DEFAULT_CAPACITY, true));
+		Trace.enableAll();
+		int size = -1;
+		boolean jmx = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-jmx") && i + 1 < args.length) {
+				String value = args[++i];
+				if (!value.equals("on") && !value.equals("off"))
+					throw new IllegalArgumentException("Expected on or off, not " + value);
+				jmx = value.equals("on");
+			} else {
+				size = Integer.parseInt(args[i]);
+			}
+		}
+		if (jmx)
+			EngineMetrics.register();
+		if (size > 0) {
+			new RoboGame(size);
+		} else {
+			new RoboGame();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+
+/**
+ * Draws robots part way through a tick, between where the last world update
+ * left them and where they are going. Each painter keeps the states it reads
+ * from the robots, so it belongs to the one thread that paints with it.
+ */
+public class RobotPainter {
+
+	private final RobotState from = new RobotState(), to = new RobotState();
+
+	public void draw(Graphics2D g2d, Robot robot, double time) {
+		read(robot);
+		double x = centre(from.x, to.x, time);
+		double y = centre(from.y, to.y, time);
+
+		double angle = getAngle(from.getDirection());
+		switch (to.action) {
+		case Robot.ACTION_TURN_LEFT:
+			angle -= Math.toRadians(90) * time;
+			break;
+		case Robot.ACTION_TURN_RIGHT:
+			angle += Math.toRadians(90) * time;
+			break;
+		case Robot.ACTION_TURN_AROUND:
+			angle += Math.toRadians(180) * time;
+			break;
+		}
+
+		AffineTransform trans = new AffineTransform();
+		trans.translate(x, y);
+		trans.rotate(angle);
+
+		boolean moving = ((int) (time * 10)) % 2 == 0 && to.action < Robot.ACTION_TAKE_FUEL && to.action > 0;
+		Image robotImage = SpriteCache.robot(robot.getColour(), moving ? 2 : 1);
+		trans.translate(-robotImage.getWidth(null) / 2d, -robotImage.getHeight(null) / 2d);
+		g2d.drawImage(robotImage, trans, null);
+
+		if (from.shield) {
+			trans = new AffineTransform();
+			trans.translate(x - 25, y - 25);
+			g2d.drawImage(SpriteCache.get(SpriteCache.SHIELD), trans, null);
+		}
+
+		double fuelCurrent = to.fuel * time + from.fuel * (1 - time);
+
+		// draw fuel indicator
+		Arc2D fuelArc = new Arc2D.Double(x - 10, y - 10, 20, 20, -90, 360d * fuelCurrent / 100d, Arc2D.OPEN);
+		g2d.setStroke(new BasicStroke(3));
+		g2d.setColor(Color.GREEN);
+		g2d.draw(fuelArc);
+	}
+
+	/**
+	 * Draws the robot as a plain dot, for when the view is zoomed too far out
+	 * for sprites to be visible.
+	 */
+	public void drawMarker(Graphics2D g2d, Robot robot, double time, double radius) {
+		read(robot);
+		double x = centre(from.x, to.x, time);
+		double y = centre(from.y, to.y, time);
+		g2d.setColor("red".equals(robot.getColour()) ? Color.RED : Color.BLUE);
+		g2d.fill(new Ellipse2D.Double(x - radius, y - radius, 2 * radius, 2 * radius));
+	}
+
+	/**
+	 * Whether the robot is in, or moving into, the given rectangle of cells.
+	 */
+	public boolean isWithin(Robot robot, Rectangle cells) {
+		read(robot);
+		return cells.contains(from.x, from.y) || cells.contains(to.x, to.y);
+	}
+
+	private void read(Robot robot) {
+		robot.getState(from);
+		robot.getTarget(to);
+	}
+
+	/**
+	 * @return the pixel at the middle of the robot, the given fraction of the
+	 *         way from one cell to the next
+	 */
+	private static double centre(int from, int to, double time) {
+		double cell = from * (1 - time) + to * time;
+		return cell * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
+	}
+
+	private static double getAngle(Robot.DIRECTION direction) {
+		switch (direction) {
+		case NORTH:
+			return 0;
+		case WEST:
+			return Math.toRadians(270);
+		case SOUTH:
+			return Math.toRadians(180);
+		case EAST:
+			return Math.toRadians(90);
+		}
+		return 0;
+	}
+}
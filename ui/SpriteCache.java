@@ -0,0 +1,84 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Process-wide cache of the images in the assets folder. Each image is
+ * decoded at most once, and only when something that draws asks for it, so
+ * headless worlds never touch ImageIO.
+ */
+public class SpriteCache {
+
+	public static final String FUEL = "fuel", SHIELD = "shield";
+
+	private static final String ASSET_DIR = "assets/";
+	private static final String[] ALL = { FUEL, SHIELD, "robot_red_1", "robot_red_2", "robot_blue_1",
+			"robot_blue_2" };
+
+	private static final ConcurrentHashMap<String, FutureTask<BufferedImage>> images = new ConcurrentHashMap<String, FutureTask<BufferedImage>>();
+	// the images that could not be read, once that has been reported
+	private static final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Starts decoding every asset in the background. Called by the GUI when it
+	 * is created, so the images are ready by the first repaint.
+	 */
+	public static void preload() {
+		for (String name : ALL) {
+			ForkJoinPool.commonPool().execute(task(name));
+		}
+	}
+
+	/**
+	 * @return the image assets/name.png, decoding it if no one has yet, or null
+	 *         if it could not be read. Why it could not be read is printed the
+	 *         first time only; after that the failure is remembered.
+	 */
+	public static BufferedImage get(String name) {
+		FutureTask<BufferedImage> task = task(name);
+		// does nothing if the image is already decoded or being decoded
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (failed.add(name))
+				e.getCause().printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * @param frame
+	 *            1 or 2, the two frames of the walking animation
+	 */
+	public static BufferedImage robot(String colour, int frame) {
+		return get("robot_" + colour + "_" + frame);
+	}
+
+	private static FutureTask<BufferedImage> task(final String name) {
+		FutureTask<BufferedImage> task = images.get(name);
+		if (task == null) {
+			task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws IOException {
+					return ImageIO.read(new File(ASSET_DIR + name + ".png"));
+				}
+			});
+			FutureTask<BufferedImage> existing = images.putIfAbsent(name, task);
+			if (existing != null)
+				task = existing;
+		}
+		return task;
+	}
+}
@@ -0,0 +1,560 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+@SuppressWarnings("serial")
+public class WorldComponent extends JComponent {
+
+	public static final int GRID_SIZE = 50;
+	private static final int ANIMATION_DELAY = FrameScheduler.FRAME_DELAY;
+	private static final int WORLD_UPDATE_DELAY = 33;
+	private static final int VIEW_SIZE = 600;
+	// below these many pixels per cell, grid lines are dropped and sprites
+	// are drawn as dots
+	private static final double MIN_GRID_CELL = 4, MIN_SPRITE_CELL = 16;
+	private static final double MAX_SCALE = 4, ZOOM_STEP = 1.25;
+
+	/** Playback speeds offered by the GUI, as multiples of the normal pace. */
+	public static final double[] SPEEDS = { 0.25, 0.5, 1, 2, 4, 8, 16, 32, 64 };
+
+	private volatile World world;
+	private volatile boolean running;
+	private Thread turboThread;
+
+	private volatile double progress = 0;
+	private volatile double speed = 1;
+	private volatile boolean turbo = false;
+
+	private final int arenaSize;
+	private final int viewSize;
+	// compact views draw whole ticks only and repaint only when they change
+	private boolean compact = false;
+	private int paintedTick = -1;
+	private volatile String result;
+	// screen pixels per world pixel, and the top left of the view in screen
+	// pixels of the scaled world
+	private double scale = 1, originX = 0, originY = 0;
+	private final RobotPainter painter = new RobotPainter();
+
+	// set while showing a recording rather than a live match; set on the
+	// event thread and read by the FrameScheduler's
+	private volatile ReplayWorld replay;
+	private volatile boolean paused;
+	private MatchRecorder recorder;
+	private Path recordFile;
+
+	public WorldComponent() {
+		this(World.SIZE);
+	}
+
+	/**
+	 * @param arenaSize
+	 *            number of cells along each side of the worlds to show. Large
+	 *            arenas start zoomed out to fit, and can be zoomed with the
+	 *            mouse wheel and panned by dragging.
+	 */
+	public WorldComponent(int arenaSize) {
+		this(arenaSize, VIEW_SIZE);
+	}
+
+	/**
+	 * Creates a view of an existing world, for drawing it offscreen.
+	 */
+	public WorldComponent(World world, int viewSize) {
+		this(world.getSize(), viewSize);
+		this.world = world;
+		setSize(viewSize, viewSize);
+	}
+
+	/**
+	 * @param viewSize
+	 *            width and height of the component in pixels
+	 */
+	public WorldComponent(int arenaSize, int viewSize) {
+		super();
+		this.arenaSize = arenaSize;
+		this.viewSize = viewSize;
+		world = new World(arenaSize);
+		setPreferredSize(new Dimension(viewSize, viewSize));
+		SpriteCache.preload();
+		fitView();
+
+		MouseAdapter viewControl = new MouseAdapter() {
+			private Point dragStart;
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragStart = e.getPoint();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (dragStart == null)
+					return;
+				pan(dragStart.x - e.getX(), dragStart.y - e.getY());
+				dragStart = e.getPoint();
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) {
+					fitView();
+					repaint();
+				}
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+			}
+		};
+		addMouseListener(viewControl);
+		addMouseMotionListener(viewControl);
+		addMouseWheelListener(viewControl);
+	}
+
+	public void start() {
+		progress = 0;
+		result = null;
+		running = true;
+		if (recordFile != null) {
+			try {
+				// the header holds the programs, so wait until now to create it
+				recorder = new MatchRecorder(recordFile, world);
+				world.setRecorder(recorder);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			recordFile = null;
+		}
+		FrameScheduler.get().add(this);
+		world.start();
+		if (turbo)
+			startTurbo();
+	}
+
+	public void reset() {
+		stop();
+		stopTurbo();
+		closeRecorder();
+		result = null;
+		world.reset();
+		boolean replaying = replay != null;
+		if (replaying) {
+			closeReplay();
+			fitView();
+		}
+		world = replaying ? new World(arenaSize) : world.reuseOrReplace();
+	}
+
+	/**
+	 * Records the next match to the given file, once its programs are loaded
+	 * and it is started.
+	 */
+	public void recordTo(Path file) {
+		recordFile = file;
+	}
+
+	private void closeRecorder() {
+		if (recorder == null)
+			return;
+		try {
+			recorder.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		recorder = null;
+	}
+
+	private void closeReplay() {
+		try {
+			replay.getRecording().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		replay = null;
+	}
+
+	/**
+	 * Shows a recorded match in place of a live one. It starts playing at the
+	 * current speed, and can be paused and moved to any tick with
+	 * setReplayTick.
+	 */
+	public void playRecording(MatchRecording recording) throws IOException {
+		reset();
+		ReplayWorld r = new ReplayWorld(recording);
+		r.showTick(0);
+		replay = r;
+		world = r;
+		fitView();
+		paused = false;
+		progress = 0;
+		running = true;
+		FrameScheduler.get().add(this);
+		firePropertyChange("replayTick", -1, 0);
+		repaint();
+	}
+
+	public boolean isReplaying() {
+		return replay != null;
+	}
+
+	public void setPaused(boolean paused) {
+		this.paused = paused;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return the tick of the recording being shown, or -1 if not replaying.
+	 */
+	public int getReplayTick() {
+		return (replay != null) ? replay.getTick() : -1;
+	}
+
+	/**
+	 * Jumps the replay to the given tick, which is clamped to the recording.
+	 */
+	public void setReplayTick(int tick) {
+		if (replay == null)
+			return;
+		tick = Math.max(0, Math.min(replay.getRecording().getTickCount() - 1, tick));
+		int old = replay.getTick();
+		if (tick == old)
+			return;
+		try {
+			replay.showTick(tick);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		progress = 0;
+		firePropertyChange("replayTick", old, tick);
+		repaint();
+	}
+
+	/**
+	 * Sets the playback speed as a multiple of the normal pace and leaves turbo
+	 * mode. Takes effect immediately, even part way through a match.
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+		setTurbo(false);
+	}
+
+	/**
+	 * In turbo mode the world is advanced as soon as both robots have chosen
+	 * their action, and the animation timer only repaints the latest state
+	 * without interpolating between ticks.
+	 */
+	public synchronized void setTurbo(boolean turbo) {
+		this.turbo = turbo;
+		if (!turbo)
+			stopTurbo();
+		else if (running)
+			startTurbo();
+	}
+
+	private synchronized void startTurbo() {
+		if (turboThread != null || replay != null)
+			return;
+		turboThread = new Thread(new TurboTask(), "turbo");
+		turboThread.setDaemon(true);
+		turboThread.start();
+	}
+
+	private synchronized void stopTurbo() {
+		if (turboThread == null)
+			return;
+		turboThread.interrupt();
+		turboThread = null;
+		progress = 0;
+	}
+
+	/**
+	 * A compact view, as used by the dashboard, only draws the state at each
+	 * tick, repaints only when a tick has passed, and reports the end of the
+	 * match on the arena itself instead of in a dialog.
+	 */
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * @return a description of how the match ended, or null if it has not.
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Zooms the view so that the whole arena fits, but never magnifies it.
+	 */
+	public void fitView() {
+		scale = Math.min(1, (double) viewSize / (world.getSize() * GRID_SIZE));
+		originX = 0;
+		originY = 0;
+	}
+
+	/**
+	 * Zooms by the given factor, keeping the world point under (x, y) fixed.
+	 */
+	private void zoom(double factor, int x, int y) {
+		double fit = Math.min(1, (double) viewSize / (world.getSize() * GRID_SIZE));
+		double newScale = Math.max(fit, Math.min(MAX_SCALE, scale * factor));
+		originX = (originX + x) / scale * newScale - x;
+		originY = (originY + y) / scale * newScale - y;
+		scale = newScale;
+		pan(0, 0);
+	}
+
+	private void pan(double dx, double dy) {
+		double extent = world.getSize() * GRID_SIZE * scale;
+		originX = Math.max(0, Math.min(extent - getWidth(), originX + dx));
+		originY = Math.max(0, Math.min(extent - getHeight(), originY + dy));
+		repaint();
+	}
+
+	public void loadRobotProgram(int rob, File code) {
+		world.loadRobotProgram(rob, code);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		paintFrame((Graphics2D) g, getTimeRatio());
+	}
+
+	/**
+	 * Draws the world as it is the given fraction of the way through the
+	 * current tick.
+	 */
+	void paintFrame(Graphics2D g2d, double time) {
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+		World world = this.world;
+		int size = world.getSize();
+		double cell = GRID_SIZE * scale;
+		boolean sprites = cell >= MIN_SPRITE_CELL;
+
+		// the cells at least partly inside the visible part of the component
+		Rectangle clip = g2d.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		int minX = Math.max(0, (int) Math.floor((originX + clip.x) / cell));
+		int minY = Math.max(0, (int) Math.floor((originY + clip.y) / cell));
+		int maxX = Math.min(size - 1, (int) Math.floor((originX + clip.x + clip.width) / cell));
+		int maxY = Math.min(size - 1, (int) Math.floor((originY + clip.y + clip.height) / cell));
+		Rectangle visible = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+
+		AffineTransform screen = g2d.getTransform();
+		g2d.translate(-originX, -originY);
+		g2d.scale(scale, scale);
+
+		g2d.setColor(Color.BLACK);
+		g2d.setStroke(new BasicStroke(2));
+
+		if (cell >= MIN_GRID_CELL) {
+			for (int i = minY; i <= maxY + 1; i++) {
+				g2d.draw(new Line2D.Double(minX * GRID_SIZE, i * GRID_SIZE, (maxX + 1) * GRID_SIZE, i * GRID_SIZE));
+			}
+			for (int i = minX; i <= maxX + 1; i++) {
+				g2d.draw(new Line2D.Double(i * GRID_SIZE, minY * GRID_SIZE, i * GRID_SIZE, (maxY + 1) * GRID_SIZE));
+			}
+		} else {
+			g2d.draw(new Rectangle(0, 0, size * GRID_SIZE, size * GRID_SIZE));
+		}
+
+		// barrels are indexed by cell, so when fewer cells are visible than
+		// there are barrels, look the visible cells up instead of scanning
+		Set<Cell> fuel = world.getAvailableFuel();
+		BufferedImage fuelImage = sprites ? SpriteCache.get(SpriteCache.FUEL) : null;
+		g2d.setColor(Color.ORANGE);
+		if ((long) visible.width * visible.height < fuel.size()) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					if (fuel.contains(new Cell(x, y)))
+						drawBarrel(g2d, x, y, fuelImage);
+				}
+			}
+		} else {
+			for (Cell p : fuel) {
+				if (visible.contains(p.x, p.y))
+					drawBarrel(g2d, p.x, p.y, fuelImage);
+			}
+		}
+
+		// a moving robot may be drawn partly in the cell next to the view
+		visible.grow(1, 1);
+		for (int i = 1; i <= 2; i++) {
+			Robot rob;
+			if ((rob = world.getRobot(i)) != null && painter.isWithin(rob, visible)) {
+				if (sprites)
+					painter.draw(g2d, rob, time);
+				else
+					painter.drawMarker(g2d, rob, time, Math.max(GRID_SIZE / 2d, 3 / scale));
+			}
+		}
+		g2d.setTransform(screen);
+		paintedTick = world.getTicks();
+
+		if (compact && result != null) {
+			g2d.setColor(new Color(255, 255, 255, 200));
+			g2d.fillRect(0, getHeight() - 20, getWidth(), 20);
+			g2d.setColor(Color.BLACK);
+			g2d.drawString(result, 4, getHeight() - 6);
+		}
+	}
+
+	private void drawBarrel(Graphics2D g2d, int cellX, int cellY, BufferedImage fuelImage) {
+		if (fuelImage != null) {
+			int x = cellX * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
+			int y = cellY * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
+			g2d.drawImage(fuelImage, x, y, null);
+		} else {
+			double r = Math.max(GRID_SIZE / 3d, 1.5 / scale);
+			double c = GRID_SIZE / 2d;
+			g2d.fill(new Rectangle2D.Double(cellX * GRID_SIZE + c - r, cellY * GRID_SIZE + c - r, 2 * r, 2 * r));
+		}
+	}
+
+	private double getTimeRatio() {
+		return (turbo || compact) ? 0 : progress;
+	}
+
+	private boolean anyDead(World world) {
+		return world.getRobot(1).isDead() || world.getRobot(2).isDead();
+	}
+
+	private void stop() {
+		running = false;
+		FrameScheduler.get().remove(this);
+	}
+
+	/**
+	 * Advances the world clock by one animation frame and repaints if needed.
+	 * Called by the FrameScheduler only.
+	 */
+	void nextFrame() {
+		ReplayWorld replay = this.replay;
+		if (replay != null) {
+			nextReplayFrame(replay);
+			return;
+		}
+		World world = this.world;
+		// test for any deaths
+		boolean r1dead = world.getRobot(1).isDead();
+		boolean r2dead = world.getRobot(2).isDead();
+		if (r1dead || r2dead) {
+			stop();
+			closeRecorder();
+			String msg = (r1dead && r2dead) ? "Both robots" : r1dead ? "Robot 1 (red)" : "Robot 2 (blue)";
+			result = msg + " ran out of fuel!";
+			if (compact) {
+				repaint();
+			} else {
+				// the frame thread is shared, so it must not wait for the dialog
+				final String message = result;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JOptionPane.showMessageDialog(null, message);
+					}
+				});
+			}
+			return;
+		}
+
+		// logic tick, unless the turbo thread is driving the world
+		if (!turbo) {
+			double p = progress + speed / WORLD_UPDATE_DELAY;
+			boolean first = true;
+			while (p >= 1 && !anyDead(world)) {
+				// extra ticks in the same frame must not run ahead of the
+				// robots, or they would miss turns
+				if (!first && !world.isReadyForUpdate()) {
+					p = Math.nextDown(1d);
+					break;
+				}
+				world.updateWorld();
+				p -= 1;
+				first = false;
+			}
+			progress = p;
+		}
+		if (!compact) {
+			repaint();
+		} else if (world.getTicks() != paintedTick && isShowing() && !getVisibleRect().isEmpty()) {
+			repaint();
+		}
+	}
+
+	private void nextReplayFrame(ReplayWorld replay) {
+		if (paused)
+			return;
+		int last = replay.getRecording().getTickCount() - 1;
+		int tick = replay.getTick();
+		// turbo shows every tick once, without interpolation
+		double p = progress + (turbo ? 1 : speed / WORLD_UPDATE_DELAY);
+		while (p >= 1 && tick < last) {
+			tick++;
+			p -= 1;
+		}
+		if (tick >= last) {
+			p = 0;
+			paused = true;
+		}
+		progress = p;
+		int old = replay.getTick();
+		try {
+			replay.showTick(tick);
+		} catch (IOException e) {
+			e.printStackTrace();
+			paused = true;
+		}
+		if (tick != old)
+			firePropertyChange("replayTick", old, tick);
+		repaint();
+	}
+
+	private class TurboTask implements Runnable {
+
+		@Override
+		public void run() {
+			World w = world;
+			// a robot stuck thinking gets the same time as at normal speed
+			long timeout = WORLD_UPDATE_DELAY * ANIMATION_DELAY * 1000000L;
+			while (!Thread.currentThread().isInterrupted() && w == world && !anyDead(w)) {
+				if (!w.step(timeout))
+					return;
+			}
+		}
+	}
+}